@@ -0,0 +1,78 @@
+package com.lms.benchmarks;
+
+import com.lms.Book;
+import com.lms.DatabaseConnection;
+import com.lms.tools.EmbeddedDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning {@code books} rows into Book objects. {@link #scanOnly()} runs the same
+ * query as {@link Book#viewAllBooks()} without building objects, so the difference between
+ * the two is the cost of the mapping itself. {@link #findById()} is dominated by the
+ * per-call overhead of preparing and running a query rather than by mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookMappingBenchmark {
+
+    @Param({"10000"})
+    private int books;
+
+    @Setup
+    public void setUp() throws SQLException {
+        EmbeddedDatabase.start(books, 1);
+    }
+
+    @Benchmark
+    public List<Book> viewAllBooks() {
+        return Book.viewAllBooks();
+    }
+
+    @Benchmark
+    public List<Book> viewBooksPage() {
+        return Book.viewBooksPage(books / 2, 200);
+    }
+
+    @Benchmark
+    public Book findById() {
+        return Book.findById(books / 2);
+    }
+
+    @Benchmark
+    public long scanOnly() throws SQLException {
+        String sql = "SELECT book_id, title, author, isbn, category_id, total_copies FROM books";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+        long checksum = 0;
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                checksum += rs.getInt(1);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,80 @@
+package com.lms.benchmarks;
+
+import com.lms.Book;
+import com.lms.IncrementalFilter;
+import com.lms.tools.EmbeddedDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Measures the search box filter of the user dashboard while a query is typed one
+ * character at a time, each keystroke re-evaluating the predicate over every book as a
+ * FilteredList does. {@link #naiveTyping()} uses the lower-casing predicate the dashboard
+ * had before {@link IncrementalFilter}, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardFilterBenchmark {
+
+    private static final String TYPED_QUERY = "silent riv";
+
+    @Param({"50000"})
+    private int books;
+
+    private List<Book> bookList;
+    private IncrementalFilter filter;
+
+    @Setup
+    public void setUp() {
+        bookList = EmbeddedDatabase.syntheticBooks(books);
+        filter = new IncrementalFilter(bookList);
+    }
+
+    @Benchmark
+    public int incrementalTyping() {
+        int matches = 0;
+        for (int length = 1; length <= TYPED_QUERY.length(); length++) {
+            matches = countMatches(filter.apply(TYPED_QUERY.substring(0, length)));
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int naiveTyping() {
+        int matches = 0;
+        for (int length = 1; length <= TYPED_QUERY.length(); length++) {
+            String lowerCaseFilter = TYPED_QUERY.substring(0, length).toLowerCase();
+            matches = countMatches(book -> book.getTitle().toLowerCase().contains(lowerCaseFilter) ||
+                    book.getAuthor().toLowerCase().contains(lowerCaseFilter));
+        }
+        return matches;
+    }
+
+    private int countMatches(Predicate<Book> predicate) {
+        int matches = 0;
+        for (Book book : bookList) {
+            if (predicate.test(book)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
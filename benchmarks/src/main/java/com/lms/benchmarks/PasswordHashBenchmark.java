@@ -0,0 +1,48 @@
+package com.lms.benchmarks;
+
+import com.lms.User;
+import com.lms.UserManager;
+import com.lms.tools.EmbeddedDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking a password as done on every login once the user's stored hash is
+ * cached: hashing the typed password and comparing it with the stored digest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashBenchmark {
+
+    private static final String USERNAME = "benchmark-user";
+
+    private String password = "correct horse battery staple";
+
+    @Setup
+    public void setUp() throws SQLException {
+        EmbeddedDatabase.start(0, 0);
+        new User(USERNAME, password).register("user");
+        UserManager.getShared().checkPassword(USERNAME, password); // Caches the stored hash
+    }
+
+    @Benchmark
+    public boolean checkPassword() {
+        return UserManager.getShared().checkPassword(USERNAME, password);
+    }
+}
@@ -0,0 +1,60 @@
+package com.lms.benchmarks;
+
+import com.lms.Book;
+import com.lms.SearchHit;
+import com.lms.SearchService;
+import com.lms.tools.EmbeddedDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SearchService queries against the in-memory catalog: substring title search
+ * and ranked search with an exact, a multi-word and a misspelled query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"50000"})
+    private int books;
+
+    @Param({"river", "silent river", "shadw gardn"})
+    private String query;
+
+    private SearchService searchService;
+
+    @Setup
+    public void setUp() throws SQLException {
+        EmbeddedDatabase.start(books, 1);
+        searchService = new SearchService();
+        searchService.search("load", 1); // Loads the shared catalog outside the measurement
+    }
+
+    @Benchmark
+    public List<SearchHit> rankedSearch() {
+        return searchService.search(query, 20);
+    }
+
+    @Benchmark
+    public List<Book> titleSearch() {
+        return searchService.searchByTitle(query);
+    }
+}
@@ -0,0 +1,133 @@
+package com.lms.tools;
+
+import com.lms.Book;
+import com.lms.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The EmbeddedDatabase class points the application at an in-memory H2 database in MySQL
+ * mode and fills it with a synthetic catalog, for tools that must run without a MySQL
+ * server such as the load simulator and the benchmarks. The generated data depends only
+ * on the seed, so runs are comparable with each other.
+ */
+public final class EmbeddedDatabase {
+
+    private static final String URL = "jdbc:h2:mem:lms;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final long SEED = 42;
+
+    private static final String[] TITLE_WORDS = {"Silent", "River", "Shadow", "Empire", "Garden", "Winter",
+            "Machine", "Ocean", "Secret", "Kingdom", "Letters", "Journey", "Mountain", "Harvest", "Stranger",
+            "Memory", "Island", "Thunder", "Lantern", "Orchard", "Compass", "Glass", "Falcon", "Meridian"};
+    private static final String[] FIRST_NAMES = {"Ada", "Bruno", "Chiara", "Dmitri", "Elena", "Farid", "Grace",
+            "Hiro", "Ines", "Jonas", "Kwame", "Lucia"};
+    private static final String[] SURNAMES = {"Adams", "Brooks", "Chen", "Dubois", "Evans", "Fischer", "Garcia",
+            "Haddad", "Ito", "Jensen", "Kowalski", "Lindqvist", "Moreau", "Nakamura", "Okafor", "Petrov"};
+
+    private static boolean started;
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Switches the application to the in-memory database and creates and fills its tables.
+     * Must be called before the first connection is requested. Calling it again does nothing.
+     *
+     * @param books         The number of books to create.
+     * @param copiesPerBook The number of available copies to create per book.
+     * @throws SQLException if the database cannot be created.
+     */
+    public static synchronized void start(int books, int copiesPerBook) throws SQLException {
+        if (started) {
+            return;
+        }
+        System.setProperty(DatabaseConnection.URL_PROPERTY, URL);
+        System.setProperty(DatabaseConnection.USER_PROPERTY, "sa");
+        System.setProperty(DatabaseConnection.PASSWORD_PROPERTY, "");
+        createSchema();
+        insertBooks(syntheticBooks(books), copiesPerBook);
+        started = true;
+    }
+
+    /**
+     * Generates books with random titles and authors, numbered from 1.
+     *
+     * @param count The number of books to generate.
+     * @return The books, with their IDs set.
+     */
+    public static List<Book> syntheticBooks(int count) {
+        Random random = new Random(SEED);
+        List<Book> books = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+                    + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+                    + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+            String author = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + SURNAMES[random.nextInt(SURNAMES.length)];
+            Book book = new Book(title, author, String.format("978%010d", id), 1 + random.nextInt(4), 0);
+            book.setId(id);
+            books.add(book);
+        }
+        return books;
+    }
+
+    // Mirrors the tables of the MySQL schema that the application uses
+    private static void createSchema() throws SQLException {
+        String[] ddl = {
+                "CREATE TABLE users (username VARCHAR(255) PRIMARY KEY, password VARCHAR(255) NOT NULL, role VARCHAR(50) NOT NULL)",
+                "CREATE TABLE category (category_id INT PRIMARY KEY, name VARCHAR(255) NOT NULL)",
+                "CREATE TABLE books (book_id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255) NOT NULL, " +
+                        "author VARCHAR(255) NOT NULL, isbn VARCHAR(20), category_id INT, total_copies INT NOT NULL)",
+                "CREATE TABLE copies (copy_id INT AUTO_INCREMENT PRIMARY KEY, book_id INT NOT NULL, " +
+                        "status VARCHAR(20) NOT NULL, borrowed_by VARCHAR(255), borrowed_date DATETIME)",
+                "CREATE INDEX copies_book_status ON copies (book_id, status)",
+                "CREATE INDEX copies_borrowed_by ON copies (borrowed_by)",
+                // H2 can hand out duplicate identity values under concurrent inserts; sequences are safe
+                "CREATE SEQUENCE catalog_changes_seq",
+                "CREATE TABLE catalog_changes (seq BIGINT DEFAULT NEXT VALUE FOR catalog_changes_seq PRIMARY KEY, " +
+                        "book_id INT NOT NULL, change_type VARCHAR(32) NOT NULL, username VARCHAR(255) NULL, " +
+                        "origin CHAR(36) NOT NULL, changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3))",
+                "INSERT INTO category VALUES (1, 'Fiction'), (2, 'Non-Fiction'), (3, 'Science Fiction'), (4, 'Biography')"
+        };
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : ddl) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    private static void insertBooks(List<Book> books, int copiesPerBook) throws SQLException {
+        String bookSql = "INSERT INTO books (book_id, title, author, isbn, category_id, total_copies) VALUES (?, ?, ?, ?, ?, ?)";
+        String copySql = "INSERT INTO copies (book_id, status) VALUES (?, 'available')";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement bookStmt = conn.prepareStatement(bookSql);
+             PreparedStatement copyStmt = conn.prepareStatement(copySql)) {
+            for (Book book : books) {
+                bookStmt.setInt(1, book.getId());
+                bookStmt.setString(2, book.getTitle());
+                bookStmt.setString(3, book.getAuthor());
+                bookStmt.setString(4, book.getIsbn());
+                bookStmt.setInt(5, book.getCategoryId());
+                bookStmt.setInt(6, copiesPerBook);
+                bookStmt.addBatch();
+                for (int copy = 0; copy < copiesPerBook; copy++) {
+                    copyStmt.setInt(1, book.getId());
+                    copyStmt.addBatch();
+                }
+            }
+            bookStmt.executeBatch();
+            copyStmt.executeBatch();
+        }
+    }
+}
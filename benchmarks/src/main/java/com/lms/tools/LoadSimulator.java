@@ -0,0 +1,239 @@
+package com.lms.tools;
+
+import com.lms.Book;
+import com.lms.Catalog;
+import com.lms.CheckInService;
+import com.lms.CheckoutService;
+import com.lms.ConnectionPool;
+import com.lms.DatabaseConnection;
+import com.lms.SearchService;
+import com.lms.User;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LoadSimulator class is a headless tool that measures how the library behaves under
+ * many simultaneous patrons. Each patron is a virtual thread that logs in, searches, borrows
+ * and returns books through the same classes the dashboards use, pausing for a random think
+ * time between operations. Latency percentiles and throughput are reported per operation.
+ * <p>
+ * By default it runs against the MySQL database configured in {@link DatabaseConnection}.
+ * With {@code --embedded} it runs against an {@link EmbeddedDatabase} instead, so it needs
+ * no database server. Options, all optional:
+ * <pre>
+ *   --patrons=200          simultaneous patrons
+ *   --duration=60          measured seconds
+ *   --warmup=10            seconds run before measuring starts
+ *   --think=500            mean think time between operations in milliseconds
+ *   --mix=login:5,search:60,borrow:20,return:15
+ *                          relative weight of each operation
+ *   --pool=10              connection pool size
+ *   --embedded             use an in-memory database
+ *   --books=5000           books to seed in the in-memory database
+ *   --copies=3             copies per seeded book
+ * </pre>
+ * The simulator writes its progress and report to standard error. The application's own
+ * status lines still go to standard output and can be discarded by redirecting it. Build
+ * the benchmarks project and run it with
+ * {@code java -cp target/benchmarks.jar com.lms.tools.LoadSimulator --embedded > /dev/null}.
+ */
+public class LoadSimulator {
+
+    private static final String PATRON_PREFIX = "loadsim-patron-";
+    private static final String PATRON_PASSWORD = "loadsim";
+    private static final int SEARCH_LIMIT = 20;
+
+    private enum Operation { LOGIN, SEARCH, BORROW, RETURN }
+
+    private final Map<String, String> options;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    private final List<Integer> bookIds = new ArrayList<>();
+    private final List<String> searchTerms = new ArrayList<>();
+    private volatile boolean measuring;
+
+    private LoadSimulator(Map<String, String> options) {
+        this.options = options;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals),
+                    equals < 0 ? "true" : arg.substring(equals + 1));
+        }
+        new LoadSimulator(options).run();
+    }
+
+    private void run() throws Exception {
+        int patrons = intOption("patrons", 200);
+        int durationSeconds = intOption("duration", 60);
+        int warmupSeconds = intOption("warmup", 10);
+        long thinkMillis = intOption("think", 500);
+        parseMix(options.getOrDefault("mix", "login:5,search:60,borrow:20,return:15"));
+
+        // Must happen before the first connection is requested
+        System.setProperty(DatabaseConnection.POOL_SIZE_PROPERTY, options.getOrDefault("pool", "10"));
+        if (options.containsKey("embedded")) {
+            EmbeddedDatabase.start(intOption("books", 5000), intOption("copies", 3));
+        }
+
+        PrintStream console = System.err;
+        console.printf("Preparing %d patrons...%n", patrons);
+        for (int i = 0; i < patrons; i++) {
+            new User(PATRON_PREFIX + i, PATRON_PASSWORD).register("user"); // Already registered is fine
+        }
+        for (Book book : Book.viewAllBooks()) {
+            bookIds.add(book.getId());
+            for (String word : book.getTitle().split("\\s+")) {
+                if (word.length() > 3 && searchTerms.size() < 10_000) {
+                    searchTerms.add(word);
+                }
+            }
+        }
+        if (bookIds.isEmpty() || searchTerms.isEmpty()) {
+            console.println("The catalog is empty; add books or use --embedded.");
+            return;
+        }
+        Catalog.getShared(); // Loaded once by the first search in the application as well
+
+        long startNanos = System.nanoTime();
+        long measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        console.printf("Warming up for %d s, then measuring for %d s...%n", warmupSeconds, durationSeconds);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < patrons; i++) {
+                String username = PATRON_PREFIX + i;
+                executor.submit(() -> runPatron(username, thinkMillis, endNanos));
+            }
+            TimeUnit.NANOSECONDS.sleep(measureStartNanos - System.nanoTime());
+            measuring = true;
+        }
+        long measuredNanos = Math.min(System.nanoTime(), endNanos) - measureStartNanos;
+        report(console, patrons, measuredNanos);
+    }
+
+    private void runPatron(String username, long thinkMillis, long endNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Integer> loans = new ArrayList<>();
+        User user = new User(username, PATRON_PASSWORD);
+        CheckInService checkIn = new CheckInService();
+        SearchService search = new SearchService();
+
+        try {
+            // Spread the first requests out instead of starting every patron at once
+            Thread.sleep(random.nextLong(Math.max(1, thinkMillis)));
+            while (System.nanoTime() < endNanos) {
+                Operation operation = pickOperation(random);
+                if (operation == Operation.RETURN && loans.isEmpty()) {
+                    operation = Operation.BORROW;
+                }
+                long start = System.nanoTime();
+                boolean ok = switch (operation) {
+                    case LOGIN -> user.login(username, PATRON_PASSWORD);
+                    case SEARCH -> {
+                        search.search(searchTerms.get(random.nextInt(searchTerms.size())), SEARCH_LIMIT);
+                        yield true;
+                    }
+                    case BORROW -> {
+                        int bookId = bookIds.get(random.nextInt(bookIds.size()));
+                        CheckoutService.CheckoutResult result = CheckoutService.getShared().checkout(username, bookId);
+                        if (result.isSuccess()) {
+                            loans.add(bookId);
+                        }
+                        yield result.status() != CheckoutService.CheckoutResult.Status.FAILED;
+                    }
+                    case RETURN -> {
+                        int bookId = loans.remove(random.nextInt(loans.size()));
+                        yield checkIn.checkIn(username, bookId).isSuccess();
+                    }
+                };
+                if (measuring && System.nanoTime() < endNanos) {
+                    latencies.get(operation).record(System.nanoTime() - start);
+                    if (!ok) {
+                        errors.get(operation).increment();
+                    }
+                }
+                // Exponential think times model patrons acting independently of each other
+                Thread.sleep((long) (-thinkMillis * Math.log(1 - random.nextDouble())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!loans.isEmpty()) {
+                checkIn.checkInAll(username, loans); // Leave the catalog as it was found
+            }
+        }
+    }
+
+    private Operation pickOperation(ThreadLocalRandom random) {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.SEARCH;
+    }
+
+    private void report(PrintStream out, int patrons, long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        out.printf("%nPatrons: %d, measured for %.1f s%n", patrons, seconds);
+        out.printf("%-8s %10s %8s %9s %9s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "ops/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            out.printf(Locale.ROOT, "%-8s %10d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.name().toLowerCase(Locale.ROOT),
+                    histogram.getCount(),
+                    errors.get(operation).sum(),
+                    histogram.getCount() / seconds,
+                    histogram.getMeanNanos() / 1e6,
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(90) / 1e6,
+                    histogram.getPercentileNanos(99) / 1e6,
+                    histogram.getPercentileNanos(99.9) / 1e6,
+                    histogram.getMaxNanos() / 1e6);
+        }
+        ConnectionPool.PoolStats pool = new DatabaseConnection().getPoolStats();
+        out.printf(Locale.ROOT, "Connection pool: size %d, mean wait %.2f ms, max wait %.2f ms, timeouts %d%n",
+                pool.maxSize(), pool.averageAcquireMillis(), pool.maxAcquireMillis(), pool.timeoutCount());
+    }
+
+    private void parseMix(String mix) {
+        for (String part : mix.split(",")) {
+            String[] pair = part.split(":");
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(pair[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("The operation mix needs a positive weight: " + mix);
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
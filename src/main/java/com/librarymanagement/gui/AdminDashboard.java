@@ -1,9 +1,15 @@
 package com.librarymanagement.gui;
 
 import com.lms.Book;
+import com.lms.BookPageSource;
+import com.lms.CatalogEvent;
+import com.lms.CatalogEventBus;
+import com.lms.CategoryRegistry;
+import com.lms.InventoryManager;
 import com.lms.User;
+import com.lms.UserManager;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -12,26 +18,65 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import java.util.List;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AdminDashboard {
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 20;
+
     private TableView<Book> bookTable;
     private TextField titleField, authorField, isbnField, copiesField;
     private ComboBox<String> categoryComboBox;
     private Label statusLabel;
     private User currentUser;
+    private final AsyncDataService asyncData = new AsyncDataService();
+    private final BookPageSource pageSource = new BookPageSource(PAGE_SIZE, MAX_CACHED_PAGES);
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final Runnable catalogSubscription;
+    private final Runnable categorySubscription;
 
     // Constructor accepts User object to initialize currentUser and statusLabel
     public AdminDashboard(User user) {
         this.currentUser = user;
         this.statusLabel = new Label(); // Initialize the statusLabel here
         this.statusLabel.setStyle("-fx-text-fill: green;"); // Set default text color or style
+        // The paged table cannot be patched row by row, so added or deleted books reload it.
+        // A bulk import adds thousands of books at once, so bursts collapse into one reload.
+        this.catalogSubscription = CatalogEventBus.subscribe(event -> {
+            if ((event.type() == CatalogEvent.Type.BOOK_ADDED || event.type() == CatalogEvent.Type.BOOKS_ADDED
+                    || event.type() == CatalogEvent.Type.BOOK_DELETED)
+                    && refreshScheduled.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    refreshScheduled.set(false);
+                    if (bookTable != null) {
+                        refreshBookTable();
+                    }
+                });
+            }
+        });
+        // Categories added or renamed in the database show up in the form and the table
+        this.categorySubscription = CategoryRegistry.getShared().subscribe(() -> Platform.runLater(() -> {
+            if (categoryComboBox != null) {
+                String selected = categoryComboBox.getValue();
+                categoryComboBox.getItems().setAll(CategoryRegistry.getShared().getNames());
+                categoryComboBox.setValue(selected);
+            }
+            if (bookTable != null) {
+                bookTable.refresh();
+            }
+        }));
     }
 
     // Updated method without requiring currentUser to be passed again
-    public Scene createAdminDashboard(Stage primaryStage) {
-        if (!currentUser.getRole().equalsIgnoreCase("admin")) {
+    public Scene createAdminDashboard(Stage primaryStage, LibraryApp libraryApp) {
+        if (!UserManager.getShared().isAuthorized(currentUser.getSessionToken(), "admin")) {
+            unsubscribe(); // This view never shows the catalog
             statusLabel.setText("Access Denied: You must be an admin to view this page.");
             return new Scene(new VBox(statusLabel), 400, 200); // Simple access denied message for non-admin users
         }
@@ -40,7 +85,7 @@ public class AdminDashboard {
         mainLayout.setPadding(new Insets(10));
 
         // Create the book input form
-        VBox inputForm = createInputForm();
+        VBox inputForm = createInputForm(primaryStage, libraryApp);
         mainLayout.setLeft(inputForm);
 
         // Create the book table
@@ -53,7 +98,7 @@ public class AdminDashboard {
         return new Scene(mainLayout, 1000, 600);
     }
 
-    private VBox createInputForm() {
+    private VBox createInputForm(Stage primaryStage, LibraryApp libraryApp) {
         VBox form = new VBox(10);
         form.setPadding(new Insets(10));
         form.setMinWidth(300);
@@ -68,7 +113,7 @@ public class AdminDashboard {
         isbnField = new TextField();
         copiesField = new TextField();
         categoryComboBox = new ComboBox<>(FXCollections.observableArrayList(
-                "Fiction", "Non-Fiction", "Science Fiction", "Biography"
+                CategoryRegistry.getShared().getNames()
         ));
 
         // Add labels and fields to grid
@@ -92,9 +137,16 @@ public class AdminDashboard {
         Button addButton = new Button("Add Book");
         Button deleteButton = new Button("Delete Selected");
         Button refreshButton = new Button("Refresh Table");
+        Button importButton = new Button("Import Catalog...");
+        Button logoutButton = new Button("Logout");
+
+        // Loading indicator shown while database requests are running
+        ProgressIndicator loadingIndicator = new ProgressIndicator();
+        loadingIndicator.setPrefSize(20, 20);
+        loadingIndicator.visibleProperty().bind(asyncData.loadingProperty());
 
         HBox buttonBox = new HBox(10);
-        buttonBox.getChildren().addAll(addButton, deleteButton, refreshButton);
+        buttonBox.getChildren().addAll(addButton, deleteButton, refreshButton, importButton, logoutButton, loadingIndicator);
 
         // Status label for feedback
         // statusLabel is initialized in the constructor already
@@ -103,6 +155,13 @@ public class AdminDashboard {
         addButton.setOnAction(e -> handleAddBook());
         deleteButton.setOnAction(e -> handleDeleteBook());
         refreshButton.setOnAction(e -> refreshBookTable());
+        importButton.setOnAction(e -> handleImportCatalog());
+        logoutButton.setOnAction(e -> {
+            unsubscribe();
+            currentUser.logout();
+            LoginPage loginPage = new LoginPage();
+            loginPage.showLoginPage(primaryStage, libraryApp);
+        });
 
         // Compose the form
         form.getChildren().addAll(
@@ -134,22 +193,19 @@ public class AdminDashboard {
             @Override
             protected void updateItem(String item, boolean empty) {
                 super.updateItem(item, empty);
-                if (empty) {
-                    setText(null);
+                Book book = getTableRow() == null ? null : getTableRow().getItem();
+                if (empty || book == null) {
+                    setText(null); // Also covers rows whose page is still loading
                 } else {
-                    Book book = getTableView().getItems().get(getIndex());
-                    setText(switch (book.getCategoryId()) {
-                        case 1 -> "Fiction";
-                        case 2 -> "Non-Fiction";
-                        case 3 -> "Science Fiction";
-                        case 4 -> "Biography";
-                        default -> "Unknown";
-                    });
+                    setText(CategoryRegistry.getShared().displayNameOf(book.getCategoryId()));
                 }
             }
         });
 
         bookTable.getColumns().addAll(titleCol, authorCol, isbnCol, categoryCol);
+
+        // Rows come from the database page by page in book_id order and cannot be re-sorted
+        bookTable.getColumns().forEach(column -> column.setSortable(false));
     }
 
     private void handleAddBook() {
@@ -166,24 +222,24 @@ public class AdminDashboard {
             }
 
             // Convert category string to ID
-            int categoryId = switch (categoryComboBox.getValue()) {
-                case "Fiction" -> 1;
-                case "Non-Fiction" -> 2;
-                case "Science Fiction" -> 3;
-                case "Biography" -> 4;
-                default -> throw new IllegalArgumentException("Invalid category");
-            };
-
-            Book newBook = new Book(title, author, isbn, categoryId, copies);
-            if (newBook.addBookToDatabase()) {
-                clearFields();
-                refreshBookTable();
-                statusLabel.setText("Book added successfully!");
-                statusLabel.setStyle("-fx-text-fill: green;");
-            } else {
-                statusLabel.setText("Failed to add book.");
+            int categoryId = CategoryRegistry.getShared().idOf(categoryComboBox.getValue());
+            if (categoryId == -1) {
+                statusLabel.setText("Unknown category: " + categoryComboBox.getValue());
                 statusLabel.setStyle("-fx-text-fill: red;");
+                return;
             }
+
+            Book newBook = new Book(title, author, isbn, categoryId, copies);
+            asyncData.addBook(newBook).thenAccept(success -> {
+                if (success) {
+                    clearFields();
+                    statusLabel.setText("Book added successfully!");
+                    statusLabel.setStyle("-fx-text-fill: green;");
+                } else {
+                    statusLabel.setText("Failed to add book.");
+                    statusLabel.setStyle("-fx-text-fill: red;");
+                }
+            }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
         } catch (NumberFormatException e) {
             statusLabel.setText("Please enter a valid number of copies");
             statusLabel.setStyle("-fx-text-fill: red;");
@@ -193,24 +249,80 @@ public class AdminDashboard {
     private void handleDeleteBook() {
         Book selectedBook = bookTable.getSelectionModel().getSelectedItem();
         if (selectedBook != null) {
-            if (selectedBook.deleteBook()) {
-                refreshBookTable();
-                statusLabel.setText("Book deleted successfully!");
-                statusLabel.setStyle("-fx-text-fill: green;");
-            } else {
-                statusLabel.setText("Failed to delete book.");
-                statusLabel.setStyle("-fx-text-fill: red;");
-            }
+            asyncData.deleteBook(selectedBook).thenAccept(success -> {
+                if (success) {
+                    statusLabel.setText("Book deleted successfully!");
+                    statusLabel.setStyle("-fx-text-fill: green;");
+                } else {
+                    statusLabel.setText("Failed to delete book.");
+                    statusLabel.setStyle("-fx-text-fill: red;");
+                }
+            }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
         } else {
             statusLabel.setText("Please select a book to delete.");
             statusLabel.setStyle("-fx-text-fill: red;");
         }
     }
 
+    private void handleImportCatalog() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Catalog");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV or TSV files", "*.csv", "*.tsv", "*.txt"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = fileChooser.showOpenDialog(bookTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        statusLabel.setText("Importing " + file.getName() + "...");
+        statusLabel.setStyle("-fx-text-fill: green;");
+        InventoryManager.ImportListener listener = new InventoryManager.ImportListener() {
+            @Override
+            public void onProgress(InventoryManager.ImportProgress progress) {
+                Platform.runLater(() -> statusLabel.setText(String.format("Imported %d books, %d rejected (%.0f rows/s)",
+                        progress.imported(), progress.rejected(), progress.rowsPerSecond())));
+            }
+
+            @Override
+            public void onReject(InventoryManager.Reject reject) {
+                System.out.println("Rejected line " + reject.lineNumber() + ": " + reject.reason());
+            }
+        };
+        // A null key so that no later request cancels a running import
+        asyncData.submit(null, () -> {
+            try {
+                InventoryManager.ImportProgress result = new InventoryManager().importCatalog(file.toPath(), listener);
+                return String.format("Import finished: %d books imported, %d rejected",
+                        result.imported(), result.rejected());
+            } catch (IOException | SQLException e) {
+                System.out.println("Error importing catalog: " + e.getMessage());
+                return null;
+            }
+        }).thenAccept(message -> {
+            if (message != null) {
+                statusLabel.setText(message);
+                statusLabel.setStyle("-fx-text-fill: green;");
+            } else {
+                statusLabel.setText("Import failed; run it again to resume where it stopped.");
+                statusLabel.setStyle("-fx-text-fill: red;");
+            }
+        }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+    }
+
     private void refreshBookTable() {
-        List<Book> books = Book.viewAllBooks();
-        ObservableList<Book> bookData = FXCollections.observableArrayList(books);
-        bookTable.setItems(bookData);
+        // Only the pages the user scrolls to are fetched
+        asyncData.submit("allBooks", () -> {
+            pageSource.invalidate();
+            return pageSource.size();
+        }).thenAccept(size -> bookTable.setItems(new LazyBookList(pageSource, asyncData)))
+                .exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+    }
+
+    // Stops the event listeners, so a replaced dashboard is no longer kept alive and refreshed
+    private void unsubscribe() {
+        catalogSubscription.run();
+        categorySubscription.run();
     }
 
     private void clearFields() {
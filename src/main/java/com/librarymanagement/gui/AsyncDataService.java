@@ -0,0 +1,150 @@
+package com.librarymanagement.gui;
+
+import com.lms.Book;
+import com.lms.CheckoutService;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.scene.control.Label;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * The AsyncDataService class runs blocking database calls from the dashboards on virtual
+ * threads, so the JavaFX Application Thread never waits on MySQL.
+ * <p>
+ * Every returned future completes on the JavaFX Application Thread, so callers can update
+ * controls directly in {@code thenAccept}. Requests submitted under the same key supersede
+ * each other: when a newer request arrives, the older future is cancelled and its result
+ * is dropped. While any request is running, {@link #loadingProperty()} is true; it is
+ * cleared whether a request succeeds, fails or is superseded. A failed request completes
+ * its future exceptionally, so callers end their chain with {@link #showFailure}.
+ */
+public class AsyncDataService {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<?>> latestByKey = new ConcurrentHashMap<>();
+    private final ReadOnlyBooleanWrapper loading = new ReadOnlyBooleanWrapper(false);
+    private int runningCount; // Only touched on the JavaFX Application Thread
+
+    /**
+     * Indicates whether any request is still running, for binding loading indicators.
+     *
+     * @return A property that is true while requests are in flight.
+     */
+    public ReadOnlyBooleanProperty loadingProperty() {
+        return loading.getReadOnlyProperty();
+    }
+
+    public CompletableFuture<List<Book>> loadBorrowedBooks(String username) {
+        return submit("borrowedBooks", () -> Book.viewBorrowedBooks(username));
+    }
+
+    // Mutations are never superseded, so they are submitted without a key
+    public CompletableFuture<CheckoutService.CheckoutResult> checkout(Book book, String username) {
+        return submit(null, () -> CheckoutService.getShared().checkout(username, book.getId()));
+    }
+
+    public CompletableFuture<Boolean> returnBook(Book book, String username) {
+        return submit(null, () -> book.returnBook(username));
+    }
+
+    public CompletableFuture<Boolean> addBook(Book book) {
+        return submit(null, book::addBookToDatabase);
+    }
+
+    public CompletableFuture<Boolean> deleteBook(Book book) {
+        return submit(null, book::deleteBook);
+    }
+
+    /**
+     * Runs a task on a virtual thread and completes the returned future with its result
+     * on the JavaFX Application Thread.
+     *
+     * @param key  Requests with the same key supersede each other; null disables superseding.
+     * @param task The blocking work to run.
+     * @param <T>  The type of the result.
+     * @return A future completed on the JavaFX Application Thread, or cancelled if superseded.
+     */
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (key != null) {
+            CompletableFuture<?> previous = latestByKey.put(key, result);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+
+        onFxThread(() -> setRunning(+1));
+        EXECUTOR.execute(() -> {
+            T value = null;
+            Throwable failure = null;
+            if (!result.isCancelled()) { // Skip work that was superseded before it started
+                try {
+                    value = task.get();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+            }
+
+            T finalValue = value;
+            Throwable finalFailure = failure;
+            Platform.runLater(() -> {
+                setRunning(-1);
+                if (key != null) {
+                    latestByKey.remove(key, result);
+                }
+                if (finalFailure != null) {
+                    result.completeExceptionally(finalFailure);
+                } else {
+                    result.complete(finalValue); // No-op if the request was cancelled meanwhile
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Shows why a request failed, for use in {@code exceptionally} at the end of a caller's
+     * chain; it also catches exceptions thrown by the caller's own {@code thenAccept}.
+     * Superseded requests are not failures and are ignored.
+     *
+     * @param statusLabel The label that reports the error.
+     * @param failure     The exception the chain completed with.
+     * @return Always null, so it can be passed to {@code exceptionally} directly.
+     */
+    public static Void showFailure(Label statusLabel, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause instanceof CancellationException) {
+            return null;
+        }
+        System.out.println("Error running request: " + cause);
+        onFxThread(() -> {
+            statusLabel.setText("Error: " + (cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+            statusLabel.setStyle("-fx-text-fill: red;");
+        });
+        return null;
+    }
+
+    private void setRunning(int delta) {
+        runningCount += delta;
+        loading.set(runningCount > 0);
+    }
+
+    private static void onFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.librarymanagement.gui;
+
+import com.lms.Book;
+import com.lms.BookPageSource;
+import javafx.collections.ObservableListBase;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The LazyBookList class is a read-only list model for a TableView that reports the full
+ * catalog size but only holds the pages the user has scrolled to. Because TableView only
+ * asks for the rows it is about to draw, rows on pages that are not loaded yet are
+ * returned as null and their page is fetched in the background. Once the page arrives,
+ * the affected rows are announced as replaced and the table redraws them.
+ * <p>
+ * This list must only be used from the JavaFX Application Thread.
+ */
+public class LazyBookList extends ObservableListBase<Book> {
+
+    private final BookPageSource source;
+    private final AsyncDataService asyncData;
+    private final int size;
+    private final Set<Integer> pendingPages = new HashSet<>();
+
+    /**
+     * Creates the list. The catalog size must already have been counted, because
+     * {@link BookPageSource#size()} may query the database.
+     *
+     * @param source    The paged data source.
+     * @param asyncData The service used to fetch pages off the JavaFX Application Thread.
+     */
+    public LazyBookList(BookPageSource source, AsyncDataService asyncData) {
+        this.source = source;
+        this.asyncData = asyncData;
+        this.size = source.size();
+    }
+
+    @Override
+    public Book get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int pageIndex = index / source.getPageSize();
+        List<Book> page = source.getCachedPage(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return null;
+        }
+        int offset = index % source.getPageSize();
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void requestPage(int pageIndex) {
+        if (!pendingPages.add(pageIndex)) {
+            return; // Already on its way
+        }
+        asyncData.submit("page-" + pageIndex, () -> source.getPage(pageIndex)).whenComplete((page, failure) -> {
+            pendingPages.remove(pageIndex);
+            if (failure != null) {
+                // The rows stay empty, and the page is requested again the next time they are drawn
+                System.out.println("Error loading page " + pageIndex + ": " + failure.getMessage());
+                return;
+            }
+            int from = pageIndex * source.getPageSize();
+            int to = Math.min(size, from + source.getPageSize());
+            if (from >= to) {
+                return;
+            }
+            beginChange();
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+            endChange();
+        });
+    }
+}
@@ -1,21 +1,34 @@
 package com.librarymanagement.gui;
 
+import com.lms.CategoryRegistry;
+import com.lms.ChangeLogPoller;
 import com.lms.User;  // Make sure this import is present
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.util.concurrent.CompletableFuture;
+
 public class LibraryApp extends Application {
     private Stage primaryStage;
 
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
+        // Learn about changes made by other clients so cached data stays current
+        ChangeLogPoller.start();
+        // Load the categories while the user logs in, so the dashboards find them ready
+        CompletableFuture.runAsync(CategoryRegistry::getShared);
         // Display the login page first
         LoginPage loginPage = new LoginPage();
         loginPage.showLoginPage(primaryStage, this);  // Pass LibraryApp instance to LoginPage
     }
 
+    @Override
+    public void stop() {
+        ChangeLogPoller.stop();
+    }
+
     // This method will be used to show the main page for regular users
     public void showMainPage(Stage primaryStage, User currentUser) {
         UserDashboard userDashboard = new UserDashboard(currentUser);
@@ -28,7 +41,7 @@ public class LibraryApp extends Application {
     // This method will be used to show the admin dashboard
     public void showAdminDashboard(Stage primaryStage, User currentUser) {
         AdminDashboard dashboard = new AdminDashboard(currentUser);
-        Scene adminScene = dashboard.createAdminDashboard(primaryStage);
+        Scene adminScene = dashboard.createAdminDashboard(primaryStage, this);
         primaryStage.setScene(adminScene);
         primaryStage.setTitle("Library Management System - Admin Dashboard");
         primaryStage.show();
@@ -83,25 +83,18 @@ public class LoginPage {
         String username = usernameField.getText().trim();
         String password = passwordField.getText().trim();
 
-        System.out.println("Attempting login with username: " + username); // Debug
-
         if (validateInput(username, password)) {
             currentUser = new User(username, password);
-            System.out.println("Input validated, attempting login..."); // Debug
 
             if (currentUser.login(username, password)) {
                 String fetchedRole = currentUser.getRole();
-                System.out.println("Login successful. Fetched role: " + fetchedRole); // Debug
 
                 if ("Admin".equalsIgnoreCase(fetchedRole)) {
-                    System.out.println("Role matches Admin, showing admin dashboard"); // Debug
                     libraryApp.showAdminDashboard(primaryStage, currentUser);
                 } else {
-                    System.out.println("Role does not match Admin, showing main page"); // Debug
                     libraryApp.showMainPage(primaryStage, currentUser);
                 }
             } else {
-                System.out.println("Login failed in User.login()"); // Debug
                 statusLabel.setText("Invalid username or password.");
                 statusLabel.setStyle("-fx-text-fill: red;");
             }
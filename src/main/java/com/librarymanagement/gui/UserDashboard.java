@@ -1,7 +1,16 @@
 package com.librarymanagement.gui;
 
+import com.lms.AvailabilityService;
 import com.lms.Book;
+import com.lms.CatalogEvent;
+import com.lms.CatalogEventBus;
+import com.lms.CategoryRegistry;
+import com.lms.IncrementalFilter;
+import com.lms.SortService;
 import com.lms.User;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
@@ -13,21 +22,51 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class UserDashboard {
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(150);
+    private static final int BACKGROUND_FILTER_THRESHOLD = 5_000; // Smaller lists filter instantly
+
     private final User currentUser;
     private TableView<Book> bookTable;
     private TableView<Book> borrowedBooksTable;
     private Label statusLabel;
     private TextField searchField;
+    private ObservableList<Book> bookData;
     private FilteredList<Book> filteredBooks;
+    private IncrementalFilter searchFilter;
+    private final Map<Integer, Book> booksById = new HashMap<>();
+    private final Map<TableColumn<Book, ?>, SortService.Field> sortFields = new HashMap<>();
+    private final SortService sortService = new SortService();
+    private List<SortService.SortKey> currentSort = List.of();
+    private ObservableList<Book> borrowedBooks;
+    private final List<Integer> pendingAvailabilityIds = new ArrayList<>(); // Only touched on the FX thread
+    private final Runnable catalogSubscription;
+    private final Runnable categorySubscription;
+    private final AvailabilityService availabilityService = new AvailabilityService();
+    private final AsyncDataService asyncData = new AsyncDataService();
 
     public UserDashboard(User user) {
         this.currentUser = user;
         this.statusLabel = new Label();
         this.statusLabel.setStyle("-fx-text-fill: green;");
+        // Borrows, returns and catalog edits patch the affected rows instead of reloading
+        this.catalogSubscription = CatalogEventBus.subscribe(event -> Platform.runLater(() -> applyCatalogEvent(event)));
+        this.categorySubscription = CategoryRegistry.getShared().subscribe(() -> Platform.runLater(() -> {
+            if (bookTable != null) {
+                bookTable.refresh();
+            }
+        }));
     }
 
     public Scene createUserDashboard(Stage primaryStage, LibraryApp libraryApp) {
@@ -74,28 +113,27 @@ public class UserDashboard {
         searchField.setPromptText("Search books by title or author...");
         searchField.setPrefWidth(300);
 
-        // Add search listener
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (filteredBooks != null) {
-                filteredBooks.setPredicate(book -> {
-                    if (newValue == null || newValue.isEmpty()) {
-                        return true;
-                    }
-                    String lowerCaseFilter = newValue.toLowerCase();
-                    return book.getTitle().toLowerCase().contains(lowerCaseFilter) ||
-                            book.getAuthor().toLowerCase().contains(lowerCaseFilter);
-                });
-            }
-        });
+        // Add search listener, filtering once typing pauses
+        PauseTransition searchDebounce = new PauseTransition(SEARCH_DEBOUNCE);
+        searchDebounce.setOnFinished(e -> applySearchFilter());
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> searchDebounce.playFromStart());
 
         // Logout button
         Button logoutButton = new Button("Logout");
         logoutButton.setOnAction(e -> {
+            catalogSubscription.run();
+            categorySubscription.run();
+            currentUser.logout();
             LoginPage loginPage = new LoginPage();
             loginPage.showLoginPage(primaryStage, libraryApp);
         });
 
-        searchBox.getChildren().addAll(new Label("Search:"), searchField, logoutButton);
+        // Loading indicator shown while database requests are running
+        ProgressIndicator loadingIndicator = new ProgressIndicator();
+        loadingIndicator.setPrefSize(20, 20);
+        loadingIndicator.visibleProperty().bind(asyncData.loadingProperty());
+
+        searchBox.getChildren().addAll(new Label("Search:"), searchField, logoutButton, loadingIndicator);
         topSection.getChildren().addAll(welcomeLabel, searchBox);
 
         return topSection;
@@ -128,22 +166,29 @@ public class UserDashboard {
                     setText(null);
                 } else {
                     Book book = getTableView().getItems().get(getIndex());
-                    setText(switch (book.getCategoryId()) {
-                        case 1 -> "Fiction";
-                        case 2 -> "Non-Fiction";
-                        case 3 -> "Science Fiction";
-                        case 4 -> "Biography";
-                        default -> "Unknown";
-                    });
+                    setText(CategoryRegistry.getShared().displayNameOf(book.getCategoryId()));
                 }
             }
         });
 
         TableColumn<Book, Integer> availableCol = new TableColumn<>("Available Copies");
-        availableCol.setCellValueFactory(new PropertyValueFactory<>("availableCopies"));
+        // Served from the availability snapshot instead of one COUNT(*) query per cell
+        availableCol.setCellValueFactory(cellData ->
+                new ReadOnlyObjectWrapper<>(availabilityService.getAvailableCopies(cellData.getValue().getId())));
 
         bookTable.getColumns().addAll(titleCol, authorCol, isbnCol, categoryCol, availableCol);
 
+        // The filtered list cannot be sorted in place, so sorting reorders the books behind it
+        sortFields.put(titleCol, SortService.Field.TITLE);
+        sortFields.put(authorCol, SortService.Field.AUTHOR);
+        sortFields.put(isbnCol, SortService.Field.ISBN);
+        sortFields.put(categoryCol, SortService.Field.CATEGORY);
+        availableCol.setSortable(false);
+        bookTable.setSortPolicy(table -> {
+            sortBooks();
+            return true;
+        });
+
         // Borrow button
         Button borrowButton = new Button("Borrow Selected Book");
         borrowButton.setOnAction(e -> handleBorrowBook());
@@ -192,20 +237,27 @@ public class UserDashboard {
     private void handleBorrowBook() {
         Book selectedBook = bookTable.getSelectionModel().getSelectedItem();
         if (selectedBook != null) {
-            if (selectedBook.getAvailableCopies() > 0) {
-                if (selectedBook.borrowBook(currentUser.getUsername())) {
-                    refreshBookTable();
-                    refreshBorrowedBooksTable();
-                    statusLabel.setText("Book borrowed successfully!");
-                    statusLabel.setStyle("-fx-text-fill: green;");
-                } else {
-                    statusLabel.setText("Failed to borrow book.");
-                    statusLabel.setStyle("-fx-text-fill: red;");
+            // The checkout itself decides availability; a separate pre-check would race with it
+            asyncData.checkout(selectedBook, currentUser.getUsername()).thenAccept(result -> {
+                switch (result.status()) {
+                    case BORROWED -> {
+                        statusLabel.setText("Book borrowed successfully!");
+                        statusLabel.setStyle("-fx-text-fill: green;");
+                    }
+                    case NOT_AVAILABLE -> {
+                        statusLabel.setText("No copies available for borrowing.");
+                        statusLabel.setStyle("-fx-text-fill: red;");
+                    }
+                    case CANCELLED -> {
+                        statusLabel.setText("Borrowing was cancelled. Please try again.");
+                        statusLabel.setStyle("-fx-text-fill: red;");
+                    }
+                    case FAILED -> {
+                        statusLabel.setText("Failed to borrow book.");
+                        statusLabel.setStyle("-fx-text-fill: red;");
+                    }
                 }
-            } else {
-                statusLabel.setText("No copies available for borrowing.");
-                statusLabel.setStyle("-fx-text-fill: red;");
-            }
+            }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
         } else {
             statusLabel.setText("Please select a book to borrow.");
             statusLabel.setStyle("-fx-text-fill: red;");
@@ -215,15 +267,15 @@ public class UserDashboard {
     private void handleReturnBook() {
         Book selectedBook = borrowedBooksTable.getSelectionModel().getSelectedItem();
         if (selectedBook != null) {
-            if (selectedBook.returnBook(currentUser.getUsername())) {
-                refreshBookTable();
-                refreshBorrowedBooksTable();
-                statusLabel.setText("Book returned successfully!");
-                statusLabel.setStyle("-fx-text-fill: green;");
-            } else {
-                statusLabel.setText("Failed to return book.");
-                statusLabel.setStyle("-fx-text-fill: red;");
-            }
+            asyncData.returnBook(selectedBook, currentUser.getUsername()).thenAccept(success -> {
+                if (success) {
+                    statusLabel.setText("Book returned successfully!");
+                    statusLabel.setStyle("-fx-text-fill: green;");
+                } else {
+                    statusLabel.setText("Failed to return book.");
+                    statusLabel.setStyle("-fx-text-fill: red;");
+                }
+            }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
         } else {
             statusLabel.setText("Please select a book to return.");
             statusLabel.setStyle("-fx-text-fill: red;");
@@ -231,14 +283,206 @@ public class UserDashboard {
     }
 
     private void refreshBookTable() {
-        List<Book> books = Book.viewAllBooks();
-        ObservableList<Book> bookData = FXCollections.observableArrayList(books);
-        filteredBooks = new FilteredList<>(bookData, p -> true);
-        bookTable.setItems(filteredBooks);
+        // Unlike the admin table, this one is not paged: searching, sorting and patching rows
+        // from events all work on the whole list in memory, which paging would take away
+        // The search index over every title is built here too, off the JavaFX Application Thread
+        asyncData.submit("allBooks", () -> {
+            List<Book> books = Book.viewAllBooks();
+            availabilityService.loadAll();
+            return new LoadedBooks(books, new IncrementalFilter(books));
+        }).thenAccept(loaded -> {
+            List<Book> books = loaded.books();
+            bookData = FXCollections.observableArrayList(books);
+            booksById.clear();
+            sortService.clear();
+            books.forEach(book -> booksById.put(book.getId(), book));
+            filteredBooks = new FilteredList<>(bookData, p -> true);
+            searchFilter = loaded.searchFilter();
+            bookTable.setItems(filteredBooks);
+            applySearchFilter();
+            sortBooks();
+        }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+    }
+
+    // Sorts by the table's sort order on a background thread, keeping the filter and selection
+    private void sortBooks() {
+        List<SortService.SortKey> order = new ArrayList<>();
+        for (TableColumn<Book, ?> column : bookTable.getSortOrder()) {
+            SortService.Field field = sortFields.get(column);
+            if (field != null) {
+                order.add(new SortService.SortKey(field, column.getSortType() == TableColumn.SortType.ASCENDING));
+            }
+        }
+        currentSort = List.copyOf(order);
+        if (bookData == null || order.isEmpty()) {
+            return; // Without a sort order the books keep their current order
+        }
+        List<Book> snapshot = new ArrayList<>(bookData);
+        asyncData.submit("sortBooks", () -> sortService.sort(snapshot, order))
+                .thenAccept(sorted -> applySortedOrder(sorted, order))
+                .exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+    }
+
+    private void applySortedOrder(List<Book> sorted, List<SortService.SortKey> order) {
+        if (!order.equals(currentSort)) {
+            return; // The sort order changed while sorting
+        }
+        // Books added or deleted while sorting are reconciled against the current list
+        Set<Book> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Book> books = new ArrayList<>(bookData.size());
+        for (Book book : sorted) {
+            if (booksById.get(book.getId()) == book && placed.add(book)) {
+                books.add(book);
+            }
+        }
+        for (Book book : bookData) {
+            if (placed.add(book)) {
+                books.add(insertionPoint(books, book), book);
+            }
+        }
+        Book selected = bookTable.getSelectionModel().getSelectedItem();
+        bookData.setAll(books);
+        if (selected != null) {
+            bookTable.getSelectionModel().select(selected);
+        }
+    }
+
+    // Adds books in one list change, merged into the current sort order, keeping the selection
+    private void insertBooks(List<Book> added) {
+        if (added.size() == 1) {
+            bookData.add(insertionPoint(bookData, added.get(0)), added.get(0));
+            return;
+        }
+        if (currentSort.isEmpty()) {
+            bookData.addAll(added);
+            return;
+        }
+        Comparator<Book> comparator = sortService.comparator(currentSort);
+        List<Book> incoming = new ArrayList<>(added);
+        incoming.sort(comparator);
+        List<Book> merged = new ArrayList<>(bookData.size() + incoming.size());
+        int next = 0;
+        for (Book book : bookData) {
+            while (next < incoming.size() && comparator.compare(incoming.get(next), book) < 0) {
+                merged.add(incoming.get(next++));
+            }
+            merged.add(book);
+        }
+        merged.addAll(incoming.subList(next, incoming.size()));
+        Book selected = bookTable.getSelectionModel().getSelectedItem();
+        bookData.setAll(merged);
+        if (selected != null) {
+            bookTable.getSelectionModel().select(selected);
+        }
+    }
+
+    private int insertionPoint(List<Book> books, Book book) {
+        if (currentSort.isEmpty()) {
+            return books.size();
+        }
+        int index = Collections.binarySearch(books, book, sortService.comparator(currentSort));
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private void applySearchFilter() {
+        if (filteredBooks == null) {
+            return;
+        }
+        String query = searchField.getText();
+        FilteredList<Book> target = filteredBooks;
+        IncrementalFilter filter = searchFilter;
+        if (filter.size() < BACKGROUND_FILTER_THRESHOLD) {
+            target.setPredicate(filter.apply(query));
+        } else {
+            // Newer keystrokes supersede this request, so stale results are never applied
+            asyncData.submit("searchFilter", () -> filter.apply(query))
+                    .thenAccept(predicate -> {
+                        if (target == filteredBooks) {
+                            target.setPredicate(predicate);
+                        }
+                    }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+        }
     }
 
     private void refreshBorrowedBooksTable() {
-        List<Book> borrowedBooks = Book.viewBorrowedBooks(currentUser.getUsername());
-        borrowedBooksTable.setItems(FXCollections.observableArrayList(borrowedBooks));
+        asyncData.loadBorrowedBooks(currentUser.getUsername()).thenAccept(books -> {
+            borrowedBooks = FXCollections.observableArrayList(books);
+            borrowedBooksTable.setItems(borrowedBooks);
+        }).exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+    }
+
+    // Collects the books added by the events of one pulse, then loads their availability in one query
+    private void loadAvailabilityLater(List<Integer> bookIds) {
+        boolean scheduled = !pendingAvailabilityIds.isEmpty();
+        pendingAvailabilityIds.addAll(bookIds);
+        if (scheduled) {
+            return;
+        }
+        // Runs after the events already queued on the FX thread
+        Platform.runLater(() -> {
+            List<Integer> ids = List.copyOf(pendingAvailabilityIds);
+            pendingAvailabilityIds.clear();
+            asyncData.submit(null, () -> {
+                availabilityService.loadFor(ids);
+                return null;
+            }).thenAccept(ignored -> bookTable.refresh())
+                .exceptionally(failure -> AsyncDataService.showFailure(statusLabel, failure));
+        });
+    }
+
+    // Patches only the rows an event affects, keeping the filter and selection intact
+    private void applyCatalogEvent(CatalogEvent event) {
+        if (bookData == null) {
+            return; // The initial load has not finished and will include the change
+        }
+        boolean ownLoan = currentUser.getUsername().equals(event.username());
+        switch (event.type()) {
+            case BOOK_ADDED, BOOKS_ADDED -> {
+                List<Book> added = new ArrayList<>();
+                List<Integer> addedIds = new ArrayList<>();
+                for (Book book : event.addedBooks()) {
+                    if (booksById.putIfAbsent(book.getId(), book) == null) {
+                        searchFilter.add(book);
+                        added.add(book);
+                        addedIds.add(book.getId());
+                    }
+                }
+                if (!added.isEmpty()) {
+                    insertBooks(added);
+                    loadAvailabilityLater(addedIds);
+                }
+            }
+            case BOOK_DELETED -> {
+                Book book = booksById.remove(event.bookId());
+                if (book != null) {
+                    searchFilter.remove(book);
+                    sortService.forget(book);
+                    bookData.remove(book);
+                }
+            }
+            case AVAILABILITY_CHANGED -> {
+                availabilityService.adjust(event.bookId(), event.availabilityDelta());
+                bookTable.refresh(); // Redraws the visible rows only
+            }
+            case LOAN_OPENED -> {
+                Book book = booksById.get(event.bookId());
+                if (ownLoan && borrowedBooks != null && book != null) {
+                    borrowedBooks.add(book);
+                }
+            }
+            case LOAN_CLOSED -> {
+                if (ownLoan && borrowedBooks != null) {
+                    for (int i = 0; i < borrowedBooks.size(); i++) {
+                        if (borrowedBooks.get(i).getId() == event.bookId()) {
+                            borrowedBooks.remove(i);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private record LoadedBooks(List<Book> books, IncrementalFilter searchFilter) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package com.lms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The AvailabilityService class keeps a snapshot of how many copies of each book are
+ * available, keyed by book ID. The snapshot is loaded with a single grouped query for
+ * the whole catalog or for a page of books, instead of one COUNT(*) query per book.
+ */
+public class AvailabilityService {
+
+    // Keeps the IN (...) list well below MySQL's placeholder and packet limits
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    // Replaced wholesale by loadAll() so readers never see a half-loaded snapshot
+    private volatile Map<Integer, Integer> availableByBookId = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces the snapshot with the available copy counts of every book in the catalog.
+     *
+     * @return true if the counts were loaded, false if the query failed and the snapshot was kept.
+     */
+    public boolean loadAll() {
+        String sql = "SELECT book_id, COUNT(*) AS available FROM copies WHERE status = 'available' GROUP BY book_id";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+            while (rs.next()) {
+                counts.put(rs.getInt("book_id"), rs.getInt("available"));
+            }
+            availableByBookId = counts;
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error loading available copies: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Refreshes the snapshot for the given books only, e.g. the page currently on screen.
+     *
+     * @param bookIds The IDs of the books to load counts for.
+     */
+    public void loadFor(Collection<Integer> bookIds) {
+        List<Integer> ids = new ArrayList<>(bookIds);
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            loadChunk(ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY)));
+        }
+    }
+
+    /**
+     * Returns the number of available copies of a book from the snapshot.
+     *
+     * @param bookId The ID of the book.
+     * @return The number of available copies, or 0 if the book has none or is not loaded.
+     */
+    public int getAvailableCopies(int bookId) {
+        return availableByBookId.getOrDefault(bookId, 0);
+    }
+
+    /**
+     * Applies a known change to the snapshot without querying the database,
+     * e.g. after a borrow (-1) or a return (+1).
+     *
+     * @param bookId The ID of the book.
+     * @param delta  The change in available copies.
+     */
+    public void adjust(int bookId, int delta) {
+        availableByBookId.compute(bookId, (id, current) -> Math.max(0, (current == null ? 0 : current) + delta));
+    }
+
+    private void loadChunk(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder(
+                "SELECT book_id, COUNT(*) AS available FROM copies WHERE status = 'available' AND book_id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") GROUP BY book_id");
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setInt(i + 1, ids.get(i));
+            }
+
+            // Books without available copies do not appear in the grouped result
+            Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+            for (Integer id : ids) {
+                counts.put(id, 0);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt("book_id"), rs.getInt("available"));
+                }
+            }
+            availableByBookId.putAll(counts);
+        } catch (SQLException e) {
+            System.out.println("Error loading available copies: " + e.getMessage());
+        }
+    }
+}
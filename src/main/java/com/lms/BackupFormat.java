@@ -0,0 +1,339 @@
+package com.lms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The BackupFormat class defines the segment files written by {@link DataBackupService}.
+ * A segment is a GZIP stream holding a header (magic, version, table name and columns)
+ * followed by rows. Each row starts with a marker byte and each value with a null flag; the
+ * encoding of a value follows from its column's kind. The SHA-256 of the compressed bytes is
+ * recorded in the backup manifest, so a segment can be verified without decompressing it.
+ */
+final class BackupFormat {
+
+    static final int MAGIC = 0x4C4D5342; // "LMSB"
+    static final int VERSION = 1;
+
+    private static final int ROW = 1;
+    private static final int END = 0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BackupFormat() {
+    }
+
+    /**
+     * How a column's values are encoded.
+     */
+    enum Kind { INT, LONG, DOUBLE, DECIMAL, STRING, DATE, TIMESTAMP, BOOLEAN, BYTES }
+
+    /**
+     * A column of a backed-up table.
+     *
+     * @param name The column name.
+     * @param kind How its values are encoded.
+     */
+    record Column(String name, Kind kind) {
+    }
+
+    static List<Column> columnsOf(ResultSetMetaData metaData) throws SQLException {
+        List<Column> columns = new ArrayList<>(metaData.getColumnCount());
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columns.add(new Column(metaData.getColumnName(i), kindOf(metaData.getColumnType(i))));
+        }
+        return columns;
+    }
+
+    private static Kind kindOf(int sqlType) {
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> Kind.INT;
+            case Types.BIGINT -> Kind.LONG;
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> Kind.DOUBLE;
+            case Types.DECIMAL, Types.NUMERIC -> Kind.DECIMAL;
+            case Types.DATE -> Kind.DATE;
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> Kind.TIMESTAMP;
+            case Types.BIT, Types.BOOLEAN -> Kind.BOOLEAN;
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> Kind.BYTES;
+            default -> Kind.STRING; // Text, and anything else through its string form
+        };
+    }
+
+    /**
+     * Writes one segment file: compressed rows on the way in, checksummed bytes on the way
+     * out, straight to a file channel.
+     */
+    static final class SegmentWriter implements Closeable {
+
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final DataOutputStream out;
+        private final List<Column> columns;
+        private long rows;
+
+        SegmentWriter(Path file, String table, List<Column> columns) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            DigestOutputStream checksummed = new DigestOutputStream(Channels.newOutputStream(channel), digest);
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(checksummed, BUFFER_SIZE), BUFFER_SIZE));
+            this.columns = columns;
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(table);
+            out.writeInt(columns.size());
+            for (Column column : columns) {
+                writeString(column.name());
+                out.writeByte(column.kind().ordinal());
+            }
+        }
+
+        /**
+         * Appends the row the result set is positioned on.
+         */
+        void writeRow(ResultSet rs) throws IOException, SQLException {
+            out.writeByte(ROW);
+            for (int i = 0; i < columns.size(); i++) {
+                writeValue(rs, i + 1, columns.get(i).kind());
+            }
+            rows++;
+        }
+
+        long getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns roughly how many compressed bytes have been written so far.
+         */
+        long getBytesWritten() throws IOException {
+            return channel.position();
+        }
+
+        /**
+         * Finishes the segment and returns the hex SHA-256 of the file's bytes.
+         */
+        String finish() throws IOException {
+            out.writeByte(END);
+            out.close(); // Also writes the GZIP trailer and closes the channel
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                out.close();
+            }
+        }
+
+        private void writeValue(ResultSet rs, int index, Kind kind) throws IOException, SQLException {
+            switch (kind) {
+                case INT -> {
+                    int value = rs.getInt(index);
+                    if (writePresence(rs)) {
+                        out.writeInt(value);
+                    }
+                }
+                case LONG -> {
+                    long value = rs.getLong(index);
+                    if (writePresence(rs)) {
+                        out.writeLong(value);
+                    }
+                }
+                case DOUBLE -> {
+                    double value = rs.getDouble(index);
+                    if (writePresence(rs)) {
+                        out.writeDouble(value);
+                    }
+                }
+                case BOOLEAN -> {
+                    boolean value = rs.getBoolean(index);
+                    if (writePresence(rs)) {
+                        out.writeBoolean(value);
+                    }
+                }
+                case DECIMAL -> {
+                    BigDecimal value = rs.getBigDecimal(index);
+                    if (writePresence(rs)) {
+                        writeString(value.toPlainString());
+                    }
+                }
+                case STRING -> {
+                    String value = rs.getString(index);
+                    if (writePresence(rs)) {
+                        writeString(value);
+                    }
+                }
+                case DATE -> {
+                    LocalDate value = rs.getObject(index, LocalDate.class);
+                    if (writePresence(rs)) {
+                        out.writeLong(value.toEpochDay());
+                    }
+                }
+                case TIMESTAMP -> {
+                    // Read without a time zone, so the restored value is identical to the stored one
+                    LocalDateTime value = rs.getObject(index, LocalDateTime.class);
+                    if (writePresence(rs)) {
+                        out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+                        out.writeInt(value.getNano());
+                    }
+                }
+                case BYTES -> {
+                    byte[] value = rs.getBytes(index);
+                    if (writePresence(rs)) {
+                        out.writeInt(value.length);
+                        out.write(value);
+                    }
+                }
+            }
+        }
+
+        private boolean writePresence(ResultSet rs) throws IOException, SQLException {
+            boolean present = !rs.wasNull();
+            out.writeBoolean(present);
+            return present;
+        }
+
+        // Unlike writeUTF, not limited to 64 KB
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads one segment file back, row by row.
+     */
+    static final class SegmentReader implements Closeable {
+
+        private final DataInputStream in;
+        private final String table;
+        private final List<Column> columns;
+
+        SegmentReader(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("Not a backup segment: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                in.close();
+                throw new IOException("Unsupported backup format version " + version + ": " + file);
+            }
+            this.table = readString();
+            int columnCount = in.readInt();
+            List<Column> read = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                read.add(new Column(readString(), Kind.values()[in.readUnsignedByte()]));
+            }
+            this.columns = read;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        List<Column> getColumns() {
+            return columns;
+        }
+
+        /**
+         * Reads the next row into the given array, one value per column, null for SQL NULL.
+         *
+         * @return false once the end of the segment is reached.
+         */
+        boolean readRow(Object[] values) throws IOException {
+            if (in.readUnsignedByte() == END) {
+                return false;
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                values[i] = in.readBoolean() ? readValue(columns.get(i).kind()) : null;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Object readValue(Kind kind) throws IOException {
+            return switch (kind) {
+                case INT -> in.readInt();
+                case LONG -> in.readLong();
+                case DOUBLE -> in.readDouble();
+                case BOOLEAN -> in.readBoolean();
+                case DECIMAL -> new BigDecimal(readString());
+                case STRING -> readString();
+                case DATE -> LocalDate.ofEpochDay(in.readLong());
+                case TIMESTAMP -> LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                case BYTES -> {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    yield bytes;
+                }
+            };
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Computes the hex SHA-256 of a file, as recorded in the manifest.
+     */
+    static String checksum(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
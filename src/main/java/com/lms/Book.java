@@ -3,6 +3,8 @@ package com.lms;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class Book {
     private int id;
@@ -67,120 +69,145 @@ public class Book {
     }
 
     public int getAvailableCopies() {
-        String sql = "SELECT COUNT(*) AS available FROM copies WHERE book_id = ? AND status = 'available'";
-        DatabaseConnection dbConnection = new DatabaseConnection();
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, this.id);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getInt("available");
-            }
+        try {
+            return BookRepository.getShared().countAvailableCopies(this.id);
         } catch (SQLException e) {
             System.out.println("Error retrieving available copies: " + e.getMessage());
         }
         return 0;
     }
 
+    // Copies are claimed by CheckoutService, so concurrent borrowers do not queue on one row lock
     public boolean borrowBook(String username) {
-        String borrowSql = "UPDATE copies SET status = 'borrowed', borrowed_by = ?, borrowed_date = NOW() WHERE book_id = ? AND status = 'available' LIMIT 1";
-        DatabaseConnection dbConnection = new DatabaseConnection();
+        return CheckoutService.getShared().checkout(username, this.id).isSuccess();
+    }
 
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(borrowSql)) {
-            stmt.setString(1, username);
-            stmt.setInt(2, this.id);
+    public boolean returnBook(String username) {
+        return new CheckInService().checkIn(username, this.id).isSuccess();
+    }
 
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+    public static List<Book> viewBorrowedBooks(String username) {
+        try {
+            return BookRepository.getShared().findBorrowedBy(username);
         } catch (SQLException e) {
-            System.out.println("Error borrowing book: " + e.getMessage());
-            return false;
+            System.out.println("Error retrieving borrowed books: " + e.getMessage());
         }
+        return new ArrayList<>();
     }
 
-    public boolean returnBook(String username) {
-        String returnSql = "UPDATE copies SET status = 'available', borrowed_by = NULL, borrowed_date = NULL WHERE book_id = ? AND borrowed_by = ? LIMIT 1";
-        DatabaseConnection dbConnection = new DatabaseConnection();
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(returnSql)) {
-            stmt.setInt(1, this.id);
-            stmt.setString(2, username);
+    /**
+     * Loads a single book by its ID.
+     *
+     * @param bookId The ID of the book.
+     * @return The Book, or null if it does not exist or could not be loaded.
+     */
+    public static Book findById(int bookId) {
+        try {
+            return BookRepository.getShared().findById(bookId);
+        } catch (SQLException e) {
+            System.out.println("Error retrieving book: " + e.getMessage());
+        }
+        return null;
+    }
 
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+    /**
+     * Loads many books by their IDs, with one query per chunk of IDs rather than one per book.
+     *
+     * @param bookIds The IDs of the books.
+     * @return The books that exist, in no particular order; empty if they could not be loaded.
+     */
+    public static List<Book> findByIds(List<Integer> bookIds) {
+        try {
+            return BookRepository.getShared().findByIds(bookIds);
         } catch (SQLException e) {
-            System.out.println("Error returning book: " + e.getMessage());
-            return false;
+            System.out.println("Error retrieving books: " + e.getMessage());
         }
+        return new ArrayList<>();
     }
 
-    public static List<Book> viewBorrowedBooks(String username) {
-        List<Book> borrowedBooks = new ArrayList<>();
-        String sql = "SELECT b.book_id, b.title, b.author, b.isbn, b.category_id, b.total_copies, c.borrowed_date " +
-                "FROM books b JOIN copies c ON b.book_id = c.book_id " +
-                "WHERE c.borrowed_by = ? AND c.status = 'borrowed'";
-        DatabaseConnection dbConnection = new DatabaseConnection();
+    public static List<Book> viewAllBooks() {
+        try {
+            return BookRepository.getShared().findAll();
+        } catch (SQLException e) {
+            System.out.println("Error retrieving books from the database: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
 
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getString("isbn"),
-                        rs.getInt("category_id"),
-                        rs.getInt("total_copies")
-                );
-                book.setId(rs.getInt("book_id"));
-                borrowedBooks.add(book);
-            }
+    /**
+     * Loads one page of books in book_id order using keyset pagination, so the cost of a
+     * page does not grow with how far into the catalog it is.
+     *
+     * @param afterBookId Only books with a larger book_id are returned; 0 for the first page.
+     * @param limit       The maximum number of books to return.
+     * @return The books of the page, in ascending book_id order.
+     */
+    public static List<Book> viewBooksPage(int afterBookId, int limit) {
+        try {
+            return BookRepository.getShared().findPage(afterBookId, limit);
         } catch (SQLException e) {
-            System.out.println("Error retrieving borrowed books: " + e.getMessage());
+            System.out.println("Error retrieving page of books: " + e.getMessage());
         }
-        return borrowedBooks;
+        return new ArrayList<>();
     }
 
-    public static List<Book> viewAllBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author, isbn, category_id, total_copies FROM books";
-        DatabaseConnection dbConnection = new DatabaseConnection();
+    /**
+     * Finds the book_id at a given position in book_id order, counted from a starting key,
+     * using only the primary key index.
+     *
+     * @param fromBookId The position is counted from the first book with at least this book_id.
+     * @param offset     The zero-based position after that book.
+     * @return The book_id at that position, or -1 if there is none.
+     */
+    public static int findBookIdAt(int fromBookId, int offset) {
+        try {
+            return BookRepository.getShared().findIdAt(fromBookId, offset);
+        } catch (SQLException e) {
+            System.out.println("Error locating book position: " + e.getMessage());
+        }
+        return -1;
+    }
 
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getString("isbn"),
-                        rs.getInt("category_id"),
-                        rs.getInt("total_copies")
-                );
-                book.setId(rs.getInt("book_id"));
-                books.add(book);
-            }
+    /**
+     * Counts the books in each range of book_ids of a fixed width, so a pager can tell in
+     * which range a position falls without stepping over the books before it.
+     *
+     * @param width The number of book_ids each range covers.
+     * @return The book count per range, keyed by the range's first book_id; empty if the counts
+     *         could not be retrieved.
+     */
+    public static NavigableMap<Integer, Integer> countBooksByKeyRange(int width) {
+        try {
+            return BookRepository.getShared().countByKeyRange(width);
+        } catch (SQLException e) {
+            System.out.println("Error counting books by key range: " + e.getMessage());
+        }
+        return new TreeMap<>();
+    }
 
+    /**
+     * Counts the books in the catalog.
+     *
+     * @return The number of books, or 0 if the count could not be retrieved.
+     */
+    public static int countBooks() {
+        try {
+            return BookRepository.getShared().count();
         } catch (SQLException e) {
-            System.out.println("Error retrieving books from the database: " + e.getMessage());
+            System.out.println("Error counting books: " + e.getMessage());
         }
-        return books;
+        return 0;
     }
 
     // Method to add a new book to the database
     public boolean addBookToDatabase() {
         String sql = "INSERT INTO books (title, author, isbn, category_id, total_copies) VALUES (?, ?, ?, ?, ?)";
         DatabaseConnection dbConnection = new DatabaseConnection();
+        ChangeLog.ensureTable();
 
         try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false); // The change log entry commits together with the book
 
             stmt.setString(1, this.title);
             stmt.setString(2, this.author);
@@ -189,6 +216,18 @@ public class Book {
             stmt.setInt(5, this.totalCopies);
 
             int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected > 0) {
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        this.id = keys.getInt(1);
+                    }
+                }
+                ChangeLog.record(conn, this.id, CatalogEvent.Type.BOOK_ADDED, null);
+            }
+            conn.commit();
+            if (rowsAffected > 0) {
+                CatalogEventBus.publish(CatalogEvent.bookAdded(this));
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -201,13 +240,22 @@ public class Book {
     public boolean deleteBook() {
         String sql = "DELETE FROM books WHERE book_id = ?";
         DatabaseConnection dbConnection = new DatabaseConnection();
+        ChangeLog.ensureTable();
 
         try (Connection conn = dbConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false); // The change log entry commits together with the delete
 
             stmt.setInt(1, this.id);
 
             int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected > 0) {
+                ChangeLog.record(conn, this.id, CatalogEvent.Type.BOOK_DELETED, null);
+            }
+            conn.commit();
+            if (rowsAffected > 0) {
+                CatalogEventBus.publish(CatalogEvent.bookDeleted(this.id));
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
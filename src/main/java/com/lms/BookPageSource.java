@@ -0,0 +1,211 @@
+package com.lms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The BookPageSource class serves the catalog in fixed-size pages ordered by book_id,
+ * so a table can show a very large catalog without loading all of it.
+ * <p>
+ * Pages are fetched with keyset pagination ({@code WHERE book_id > ?}), which costs the
+ * same for the last page as for the first. The key each page starts after is remembered
+ * once known. To jump to a distant page, the books are first counted per range of
+ * book_ids with one pass over the primary key index; the range holding the page's
+ * position is found from the running totals, and the key is looked up by stepping over
+ * at most one range's worth of index entries. Recently used pages are kept in a bounded
+ * cache, and loading a page prefetches the next one in the background.
+ */
+public class BookPageSource {
+
+    private static final ExecutorService PREFETCHER = Executors.newVirtualThreadPerTaskExecutor();
+    private static final int KEY_RANGE_WIDTH = 1_024;
+
+    private final int pageSize;
+    private final Map<Integer, List<Book>> cache;
+    private final List<Integer> pageStartKeys = new ArrayList<>(); // book_id each page starts after
+    private int totalBooks = -1;
+    private int[] rangeStartKeys; // First book_id of each non-empty key range, loaded on the first jump
+    private long[] rangeStartPositions; // Number of books before each range
+    private long generation; // Bumped by invalidate() so late results from older loads are dropped
+
+    /**
+     * Creates a page source.
+     *
+     * @param pageSize      The number of books per page.
+     * @param maxCachedPages The maximum number of pages kept in memory.
+     */
+    public BookPageSource(int pageSize, int maxCachedPages) {
+        this.pageSize = pageSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Book>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        pageStartKeys.add(0);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of books in the catalog, counting them on first use.
+     *
+     * @return The number of books.
+     */
+    public int size() {
+        synchronized (this) {
+            if (totalBooks >= 0) {
+                return totalBooks;
+            }
+        }
+        int count = Book.countBooks();
+        synchronized (this) {
+            totalBooks = count;
+            return count;
+        }
+    }
+
+    /**
+     * Returns a page if it is in the cache, without touching the database.
+     *
+     * @param pageIndex The zero-based page number.
+     * @return The page's books, or null if the page is not cached.
+     */
+    public synchronized List<Book> getCachedPage(int pageIndex) {
+        return cache.get(pageIndex);
+    }
+
+    /**
+     * Returns a page, loading it from the database if it is not cached, and starts
+     * prefetching the following page.
+     *
+     * @param pageIndex The zero-based page number.
+     * @return The page's books; empty if the page lies beyond the end of the catalog.
+     */
+    public List<Book> getPage(int pageIndex) {
+        List<Book> page = loadPage(pageIndex);
+        prefetch(pageIndex + 1);
+        return page;
+    }
+
+    /**
+     * Drops every cached page and the known page boundaries, e.g. after books were added
+     * or deleted.
+     */
+    public synchronized void invalidate() {
+        cache.clear();
+        pageStartKeys.clear();
+        pageStartKeys.add(0);
+        totalBooks = -1;
+        rangeStartKeys = null;
+        rangeStartPositions = null;
+        generation++;
+    }
+
+    private void prefetch(int pageIndex) {
+        synchronized (this) {
+            if ((long) pageIndex * pageSize >= Math.max(totalBooks, 0) || cache.containsKey(pageIndex)) {
+                return;
+            }
+        }
+        PREFETCHER.execute(() -> loadPage(pageIndex));
+    }
+
+    private List<Book> loadPage(int pageIndex) {
+        long startedGeneration;
+        synchronized (this) {
+            List<Book> cached = cache.get(pageIndex);
+            if (cached != null) {
+                return cached;
+            }
+            startedGeneration = generation;
+        }
+
+        int afterKey = findPageStartKey(pageIndex, startedGeneration);
+        if (afterKey < 0) {
+            return List.of();
+        }
+        List<Book> page = Book.viewBooksPage(afterKey, pageSize);
+
+        synchronized (this) {
+            if (generation == startedGeneration) {
+                cache.put(pageIndex, page);
+                if (page.size() == pageSize) {
+                    rememberStartKey(pageIndex + 1, page.get(page.size() - 1).getId());
+                }
+            }
+        }
+        return page;
+    }
+
+    // Returns the book_id the page starts after, or -1 if the page is past the end
+    private int findPageStartKey(int pageIndex, long startedGeneration) {
+        synchronized (this) {
+            if (pageIndex < pageStartKeys.size() && pageStartKeys.get(pageIndex) != null) {
+                return pageStartKeys.get(pageIndex);
+            }
+        }
+        // The page starts after the last book of the previous page
+        int key = findKeyAt((long) pageIndex * pageSize - 1, startedGeneration);
+        if (key >= 0) {
+            synchronized (this) {
+                if (generation == startedGeneration) {
+                    rememberStartKey(pageIndex, key);
+                }
+            }
+        }
+        return key;
+    }
+
+    // Returns the book_id at a position in book_id order, or -1 if the position is past the end
+    private int findKeyAt(long position, long startedGeneration) {
+        int[] startKeys;
+        long[] startPositions;
+        synchronized (this) {
+            startKeys = rangeStartKeys;
+            startPositions = rangeStartPositions;
+        }
+        if (startKeys == null) {
+            NavigableMap<Integer, Integer> counts = Book.countBooksByKeyRange(KEY_RANGE_WIDTH);
+            startKeys = new int[counts.size()];
+            startPositions = new long[counts.size()];
+            int range = 0;
+            long before = 0;
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                startKeys[range] = entry.getKey();
+                startPositions[range++] = before;
+                before += entry.getValue();
+            }
+            synchronized (this) {
+                if (generation == startedGeneration) {
+                    rangeStartKeys = startKeys;
+                    rangeStartPositions = startPositions;
+                }
+            }
+        }
+        // Ranges are never empty, so the start positions are strictly increasing
+        int range = Arrays.binarySearch(startPositions, position);
+        if (range < 0) {
+            range = -range - 2; // The last range starting before the position
+        }
+        if (range < 0) {
+            return -1; // No books, or the counts could not be read
+        }
+        return Book.findBookIdAt(startKeys[range], (int) (position - startPositions[range]));
+    }
+
+    private void rememberStartKey(int pageIndex, int key) {
+        while (pageStartKeys.size() <= pageIndex) {
+            pageStartKeys.add(null);
+        }
+        pageStartKeys.set(pageIndex, key);
+    }
+}
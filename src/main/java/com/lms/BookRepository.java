@@ -0,0 +1,311 @@
+package com.lms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The BookRepository class runs the read queries on {@code books} and {@code copies} that
+ * the rest of the application repeats most often, and maps their rows into Book objects.
+ * <p>
+ * Statements are prepared on the server and cached by the MySQL driver per connection, as
+ * configured in {@link DatabaseConnection}, so the SQL of a hot query is parsed once per
+ * pooled connection rather than once per call. Rows are mapped by column index; the
+ * indexes are looked up by name once per query and then reused for every row. Every
+ * statement and result set is closed as soon as it has been read.
+ */
+public class BookRepository {
+
+    private static final String BOOK_COLUMNS = "book_id, title, author, isbn, category_id, total_copies";
+    private static final String FIND_BY_ID_SQL = "SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id = ?";
+    private static final String FIND_BY_IDS_SQL = "SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id IN ";
+    private static final String FIND_ALL_SQL = "SELECT " + BOOK_COLUMNS + " FROM books";
+    private static final String FIND_PAGE_SQL = "SELECT " + BOOK_COLUMNS + " FROM books " +
+            "WHERE book_id > ? ORDER BY book_id LIMIT ?";
+    private static final String FIND_BY_CATEGORY_SQL = "SELECT " + BOOK_COLUMNS + " FROM books WHERE category_id = ?";
+    private static final String FIND_BORROWED_SQL = "SELECT b.book_id, b.title, b.author, b.isbn, b.category_id, " +
+            "b.total_copies FROM books b JOIN copies c ON b.book_id = c.book_id " +
+            "WHERE c.borrowed_by = ? AND c.status = 'borrowed'";
+    private static final String FIND_ID_AT_SQL =
+            "SELECT book_id FROM books WHERE book_id >= ? ORDER BY book_id LIMIT 1 OFFSET ?";
+    private static final String COUNT_BY_KEY_RANGE_SQL = "SELECT range_start, COUNT(*) FROM " +
+            "(SELECT book_id - MOD(book_id, ?) AS range_start FROM books) ranges GROUP BY range_start ORDER BY range_start";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM books";
+    private static final String COUNT_AVAILABLE_SQL =
+            "SELECT COUNT(*) FROM copies WHERE book_id = ? AND status = 'available'";
+
+    private static final int MAX_IDS_PER_QUERY = 1_024;
+    private static final Map<String, BookMapper> MAPPERS = new ConcurrentHashMap<>();
+
+    private static volatile BookRepository shared;
+
+    private final int fetchSize;
+
+    /**
+     * Creates a repository whose queries use the given fetch size.
+     *
+     * @param fetchSize How many rows the driver should fetch per round trip, or 0 for the
+     *                  driver's default. MySQL only honours it with {@code useCursorFetch=true}.
+     */
+    public BookRepository(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Fetch size must not be negative: " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Returns the repository shared by the whole application, using the driver's default
+     * fetch size.
+     *
+     * @return The shared repository.
+     */
+    public static BookRepository getShared() {
+        BookRepository repository = shared;
+        if (repository == null) {
+            synchronized (BookRepository.class) {
+                repository = shared;
+                if (repository == null) {
+                    repository = new BookRepository(0);
+                    shared = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * Loads a single book by its ID.
+     *
+     * @param bookId The ID of the book.
+     * @return The book, or null if it does not exist.
+     * @throws SQLException if the query fails.
+     */
+    public Book findById(int bookId) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_BY_ID_SQL)) {
+            stmt.setInt(1, bookId);
+            List<Book> books = readBooks(stmt, FIND_BY_ID_SQL, 1);
+            return books.isEmpty() ? null : books.get(0);
+        }
+    }
+
+    /**
+     * Loads many books by their IDs, with one query per chunk of IDs.
+     *
+     * @param bookIds The IDs of the books.
+     * @return The books that exist, in no particular order.
+     * @throws SQLException if a query fails.
+     */
+    public List<Book> findByIds(List<Integer> bookIds) throws SQLException {
+        List<Book> books = new ArrayList<>(bookIds.size());
+        try (Connection conn = new DatabaseConnection().getConnection()) {
+            for (int from = 0; from < bookIds.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = bookIds.subList(from, Math.min(bookIds.size(), from + MAX_IDS_PER_QUERY));
+                // Padded to a power of two by repeating the last ID, so few distinct statements are cached
+                int placeholders = Integer.highestOneBit(chunk.size() * 2 - 1);
+                String sql = FIND_BY_IDS_SQL + "(" + String.join(", ", Collections.nCopies(placeholders, "?")) + ")";
+                try (PreparedStatement stmt = prepare(conn, sql)) {
+                    for (int i = 0; i < placeholders; i++) {
+                        stmt.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    books.addAll(readBooks(stmt, FIND_BY_IDS_SQL, chunk.size()));
+                }
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Loads every book in the catalog.
+     *
+     * @return All books, in no particular order.
+     * @throws SQLException if the query fails.
+     */
+    public List<Book> findAll() throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_ALL_SQL)) {
+            return readBooks(stmt, FIND_ALL_SQL, 1024);
+        }
+    }
+
+    /**
+     * Loads one page of books in book_id order using keyset pagination.
+     *
+     * @param afterBookId Only books with a larger book_id are returned; 0 for the first page.
+     * @param limit       The maximum number of books to return.
+     * @return The books of the page, in ascending book_id order.
+     * @throws SQLException if the query fails.
+     */
+    public List<Book> findPage(int afterBookId, int limit) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_PAGE_SQL)) {
+            stmt.setInt(1, afterBookId);
+            stmt.setInt(2, limit);
+            return readBooks(stmt, FIND_PAGE_SQL, limit);
+        }
+    }
+
+    /**
+     * Loads the books of one category.
+     *
+     * @param categoryId The category ID.
+     * @return The books in that category.
+     * @throws SQLException if the query fails.
+     */
+    public List<Book> findByCategory(int categoryId) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_BY_CATEGORY_SQL)) {
+            stmt.setInt(1, categoryId);
+            return readBooks(stmt, FIND_BY_CATEGORY_SQL, 64);
+        }
+    }
+
+    /**
+     * Loads the books a user currently has on loan, once per borrowed copy.
+     *
+     * @param username The borrower.
+     * @return The borrowed books.
+     * @throws SQLException if the query fails.
+     */
+    public List<Book> findBorrowedBy(String username) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_BORROWED_SQL)) {
+            stmt.setString(1, username);
+            return readBooks(stmt, FIND_BORROWED_SQL, 8);
+        }
+    }
+
+    /**
+     * Finds the book_id at a given position in book_id order, counted from a starting key.
+     * The database steps over {@code offset} index entries, so callers keep it small by
+     * starting from a nearby key, see {@link #countByKeyRange(int)}.
+     *
+     * @param fromBookId The position is counted from the first book with at least this book_id.
+     * @param offset     The zero-based position after that book.
+     * @return The book_id at that position, or -1 if there is none.
+     * @throws SQLException if the query fails.
+     */
+    public int findIdAt(int fromBookId, int offset) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, FIND_ID_AT_SQL)) {
+            stmt.setInt(1, fromBookId);
+            stmt.setInt(2, offset);
+            return readInt(stmt, -1);
+        }
+    }
+
+    /**
+     * Counts the books in each range of book_ids of a fixed width, with one pass over the
+     * primary key index. Summing the counts gives the position at which each range starts.
+     *
+     * @param width The number of book_ids each range covers.
+     * @return The book count per range, keyed by the range's first book_id; empty ranges are left out.
+     * @throws SQLException if the query fails.
+     */
+    public NavigableMap<Integer, Integer> countByKeyRange(int width) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, COUNT_BY_KEY_RANGE_SQL)) {
+            stmt.setInt(1, width);
+            NavigableMap<Integer, Integer> counts = new TreeMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Counts the books in the catalog.
+     *
+     * @return The number of books.
+     * @throws SQLException if the query fails.
+     */
+    public int count() throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, COUNT_SQL)) {
+            return readInt(stmt, 0);
+        }
+    }
+
+    /**
+     * Counts the copies of a book that are available to borrow.
+     *
+     * @param bookId The ID of the book.
+     * @return The number of available copies.
+     * @throws SQLException if the query fails.
+     */
+    public int countAvailableCopies(int bookId) throws SQLException {
+        try (Connection conn = new DatabaseConnection().getConnection();
+             PreparedStatement stmt = prepare(conn, COUNT_AVAILABLE_SQL)) {
+            stmt.setInt(1, bookId);
+            return readInt(stmt, 0);
+        }
+    }
+
+    // Closing the statement returns it to the driver's cache for this connection
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+
+    private static List<Book> readBooks(PreparedStatement stmt, String sql, int expectedRows) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            BookMapper mapper = MAPPERS.get(sql);
+            if (mapper == null) {
+                mapper = new BookMapper(rs);
+                MAPPERS.put(sql, mapper);
+            }
+            List<Book> books = new ArrayList<>(expectedRows);
+            while (rs.next()) {
+                books.add(mapper.map(rs));
+            }
+            return books;
+        }
+    }
+
+    private static int readInt(PreparedStatement stmt, int defaultValue) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : defaultValue;
+        }
+    }
+
+    /**
+     * Maps rows into Book objects by column index, with the indexes resolved once.
+     */
+    private static final class BookMapper {
+        private final int id;
+        private final int title;
+        private final int author;
+        private final int isbn;
+        private final int categoryId;
+        private final int totalCopies;
+
+        BookMapper(ResultSet rs) throws SQLException {
+            this.id = rs.findColumn("book_id");
+            this.title = rs.findColumn("title");
+            this.author = rs.findColumn("author");
+            this.isbn = rs.findColumn("isbn");
+            this.categoryId = rs.findColumn("category_id");
+            this.totalCopies = rs.findColumn("total_copies");
+        }
+
+        Book map(ResultSet rs) throws SQLException {
+            Book book = new Book(rs.getString(title), rs.getString(author), rs.getString(isbn),
+                    rs.getInt(categoryId), rs.getInt(totalCopies));
+            book.setId(rs.getInt(id));
+            return book;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.lms;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * The BookStore class holds the catalog's books column by column under their catalog
+ * ordinals, instead of as one Book object with several Strings per title. IDs, categories
+ * and copy counts are int arrays; authors are stored once in a dictionary and referenced
+ * by code; titles and ISBNs are UTF-8 bytes appended to shared byte arenas. A few large
+ * arrays replace hundreds of thousands of small objects, which the garbage collector no
+ * longer has to trace.
+ * <p>
+ * {@link #get} builds a Book from the columns when one is asked for. Substring checks run
+ * directly on the title bytes, folding ASCII case on the fly and testing eight bytes at a
+ * time for the term's first character, so scanning every title is one pass over the arena
+ * that creates no objects; only titles with other characters are decoded for the check.
+ * Authors are checked once per dictionary entry.
+ * <p>
+ * Removed books only lose their live flag, since ordinals are never reused; their bytes
+ * stay in the arenas until {@link Catalog} copies the live books into a new store. This
+ * class is not thread-safe; {@link Catalog} guards it with its own lock.
+ */
+class BookStore {
+
+    private static final byte LIVE = 1;
+    private static final byte ASCII_TITLE = 2;
+    private static final byte NULL_TITLE = 4;
+    private static final byte NULL_ISBN = 8;
+    private static final byte ASCII_ISBN = 16;
+    private static final int NULL_AUTHOR = -1;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * A field that can be searched for a substring.
+     */
+    enum Field { TITLE, AUTHOR }
+
+    /**
+     * A normalized search term, with its bytes when it is plain ASCII.
+     */
+    record Needle(String text, byte[] ascii) {
+
+        static Needle of(String normalizedTerm) {
+            byte[] bytes = normalizedTerm.getBytes(StandardCharsets.UTF_8);
+            return new Needle(normalizedTerm, bytes.length == normalizedTerm.length() ? bytes : null);
+        }
+    }
+
+    private final Arena titles = new Arena();
+    private final Arena isbns = new Arena();
+    private final Map<String, Integer> authorCodes = new HashMap<>();
+    private final List<String> authors = new ArrayList<>();
+    private final List<String> normalizedAuthors = new ArrayList<>();
+    private int[] ids = new int[1024];
+    private int[] categoryIds = new int[1024];
+    private int[] totalCopies = new int[1024];
+    private int[] authorByOrdinal = new int[1024];
+    private int[] titleEnds = new int[1024];
+    private int[] isbnEnds = new int[1024];
+    private byte[] flags = new byte[1024];
+    private int size;
+
+    /**
+     * Appends a book and returns its ordinal.
+     */
+    int add(Book book) {
+        int ordinal = size++;
+        ensureCapacity(ordinal);
+        ids[ordinal] = book.getId();
+        categoryIds[ordinal] = book.getCategoryId();
+        totalCopies[ordinal] = book.getTotalCopies();
+        authorByOrdinal[ordinal] = authorCode(book.getAuthor());
+
+        byte flag = LIVE;
+        if (book.getTitle() == null) {
+            flag |= NULL_TITLE;
+        } else if (titles.append(book.getTitle())) {
+            flag |= ASCII_TITLE;
+        }
+        titleEnds[ordinal] = titles.length;
+        if (book.getIsbn() == null) {
+            flag |= NULL_ISBN;
+        } else if (isbns.append(book.getIsbn())) {
+            flag |= ASCII_ISBN;
+        }
+        isbnEnds[ordinal] = isbns.length;
+        flags[ordinal] = flag;
+        return ordinal;
+    }
+
+    /**
+     * Tells whether the book stored under an ordinal has the same ID and values as the given one.
+     */
+    boolean matches(int ordinal, Book book) {
+        return isLive(ordinal)
+                && ids[ordinal] == book.getId()
+                && categoryIds[ordinal] == book.getCategoryId()
+                && totalCopies[ordinal] == book.getTotalCopies()
+                && Objects.equals(getAuthor(ordinal), book.getAuthor())
+                && Objects.equals(getTitle(ordinal), book.getTitle())
+                && Objects.equals(getIsbn(ordinal), book.getIsbn());
+    }
+
+    void remove(int ordinal) {
+        flags[ordinal] &= ~LIVE;
+    }
+
+    boolean isLive(int ordinal) {
+        return (flags[ordinal] & LIVE) != 0;
+    }
+
+    /**
+     * Returns the number of ordinals handed out, including those of removed books.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Builds the book stored under an ordinal.
+     *
+     * @return The book, or null if it was removed.
+     */
+    Book get(int ordinal) {
+        if (!isLive(ordinal)) {
+            return null;
+        }
+        Book book = new Book(getTitle(ordinal), getAuthor(ordinal), getIsbn(ordinal),
+                categoryIds[ordinal], totalCopies[ordinal]);
+        book.setId(ids[ordinal]);
+        return book;
+    }
+
+    String getTitle(int ordinal) {
+        if ((flags[ordinal] & NULL_TITLE) != 0) {
+            return null;
+        }
+        return titles.decode(start(titleEnds, ordinal), titleEnds[ordinal], (flags[ordinal] & ASCII_TITLE) != 0);
+    }
+
+    private String getAuthor(int ordinal) {
+        int authorCode = authorByOrdinal[ordinal];
+        return authorCode == NULL_AUTHOR ? null : authors.get(authorCode);
+    }
+
+    private String getIsbn(int ordinal) {
+        if ((flags[ordinal] & NULL_ISBN) != 0) {
+            return null;
+        }
+        return isbns.decode(start(isbnEnds, ordinal), isbnEnds[ordinal], (flags[ordinal] & ASCII_ISBN) != 0);
+    }
+
+    /**
+     * Returns the normalized author, as used by the search indexes.
+     */
+    String getNormalizedAuthor(int ordinal) {
+        int authorCode = authorByOrdinal[ordinal];
+        return authorCode == NULL_AUTHOR ? "" : normalizedAuthors.get(authorCode);
+    }
+
+    /**
+     * Tells whether a field of a book contains a normalized term, ignoring case like
+     * {@link Catalog#normalize}.
+     */
+    boolean contains(Field field, int ordinal, Needle needle) {
+        if (field == Field.AUTHOR) {
+            return getNormalizedAuthor(ordinal).contains(needle.text());
+        }
+        byte flag = flags[ordinal];
+        if ((flag & ASCII_TITLE) == 0) {
+            return Catalog.normalize(getTitle(ordinal)).contains(needle.text());
+        }
+        if (needle.ascii() == null) {
+            return false; // Lower-casing ASCII never yields other characters
+        }
+        int start = start(titleEnds, ordinal);
+        return indexOfFoldingCase(titles.bytes, start, titleEnds[ordinal], needle.ascii()) >= 0;
+    }
+
+    /**
+     * Visits, in ascending order, the live books whose field contains a normalized term,
+     * until the visitor returns false.
+     */
+    void scan(Field field, Needle needle, IntPredicate visitor) {
+        if (field == Field.AUTHOR) {
+            boolean[] matches = new boolean[authors.size()];
+            for (int code = 0; code < matches.length; code++) {
+                matches[code] = normalizedAuthors.get(code).contains(needle.text());
+            }
+            boolean nullMatches = needle.text().isEmpty(); // A missing author normalizes to ""
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                int code = authorByOrdinal[ordinal];
+                if (isLive(ordinal) && (code == NULL_AUTHOR ? nullMatches : matches[code]) && !visitor.test(ordinal)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        // The next occurrence in the arena, which may lie in a later title or span two
+        byte[] term = needle.ascii();
+        int next = term == null ? -1 : indexOfFoldingCase(titles.bytes, 0, titles.length, term);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            boolean match;
+            if ((flags[ordinal] & ASCII_TITLE) == 0) {
+                match = contains(field, ordinal, needle);
+            } else if (term == null) {
+                match = false;
+            } else {
+                int start = start(titleEnds, ordinal);
+                if (next >= 0 && next < start) {
+                    next = indexOfFoldingCase(titles.bytes, start, titles.length, term);
+                }
+                match = next >= 0 && next + term.length <= titleEnds[ordinal];
+            }
+            if (match && isLive(ordinal) && !visitor.test(ordinal)) {
+                return;
+            }
+        }
+    }
+
+    private static int start(int[] ends, int ordinal) {
+        return ordinal == 0 ? 0 : ends[ordinal - 1];
+    }
+
+    // The needle is already lower case; only the stored bytes are folded
+    private static int indexOfFoldingCase(byte[] bytes, int from, int to, byte[] needle) {
+        if (needle.length == 0) {
+            return from;
+        }
+        boolean twoBytes = needle.length > 1;
+        long firstLower = broadcast(needle[0]);
+        long firstUpper = broadcast(upperCase(needle[0]));
+        long secondLower = twoBytes ? broadcast(needle[1]) : 0;
+        long secondUpper = twoBytes ? broadcast(upperCase(needle[1])) : 0;
+        int last = to - needle.length;
+        int lastWord = to - Long.BYTES - (twoBytes ? 1 : 0);
+        int i = from;
+        for (; i <= last && i <= lastWord; i += Long.BYTES) {
+            // Only positions holding the first two characters, in either case, can start a match
+            long word = (long) LONGS.get(bytes, i);
+            long hits = zeroBytes(word ^ firstLower) | zeroBytes(word ^ firstUpper);
+            if (twoBytes) {
+                // Without a branch on the first test, which common letters would keep mispredicting
+                long following = (long) LONGS.get(bytes, i + 1);
+                hits &= zeroBytes(following ^ secondLower) | zeroBytes(following ^ secondUpper);
+            }
+            while (hits != 0) {
+                int at = i + (Long.numberOfTrailingZeros(hits) >>> 3);
+                if (at > last) {
+                    return -1;
+                }
+                if (matchesAt(bytes, at, needle)) {
+                    return at;
+                }
+                hits &= hits - 1;
+            }
+        }
+        for (; i <= last; i++) {
+            if (matchesAt(bytes, i, needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long broadcast(byte value) {
+        return (value & 0xFFL) * ONES;
+    }
+
+    private static byte upperCase(byte value) {
+        return value >= 'a' && value <= 'z' ? (byte) (value - ('a' - 'A')) : value;
+    }
+
+    // Marks every zero byte of a word, and possibly a 0x01 byte above one; matches are verified
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private static boolean matchesAt(byte[] bytes, int at, byte[] needle) {
+        for (int j = 0; j < needle.length; j++) {
+            int b = bytes[at + j];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int authorCode(String author) {
+        if (author == null) {
+            return NULL_AUTHOR;
+        }
+        Integer code = authorCodes.get(author);
+        if (code == null) {
+            code = authors.size();
+            authorCodes.put(author, code);
+            authors.add(author);
+            normalizedAuthors.add(Catalog.normalize(author));
+        }
+        return code;
+    }
+
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= ids.length) {
+            int capacity = Math.max(ordinal + 1, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            totalCopies = Arrays.copyOf(totalCopies, capacity);
+            authorByOrdinal = Arrays.copyOf(authorByOrdinal, capacity);
+            titleEnds = Arrays.copyOf(titleEnds, capacity);
+            isbnEnds = Arrays.copyOf(isbnEnds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+
+    /**
+     * A growing byte array that values are appended to back to back.
+     */
+    private static final class Arena {
+        private byte[] bytes = new byte[16 * 1024];
+        private int length;
+
+        // Returns whether the value was plain ASCII
+        boolean append(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            if (length + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + encoded.length, bytes.length * 2));
+            }
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+            return encoded.length == value.length();
+        }
+
+        // ASCII is a plain copy, skipping the UTF-8 decoder
+        String decode(int from, int to, boolean ascii) {
+            return new String(bytes, from, to - from, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,4 +1,461 @@
 package com.lms;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The Catalog class holds the library's books in memory together with trigram indexes over
+ * their titles and authors, so substring searches do not need a full table scan of
+ * {@code books}. Every book gets a dense ordinal in the order it was added; the indexes
+ * store ordinals and are updated incrementally as books are added or deleted. A book
+ * added again unchanged keeps its ordinal; a changed one is replaced under a new ordinal.
+ * Once removed and replaced books make up a quarter of the ordinals, the store and the
+ * indexes are rebuilt from the live books, which renumbers them in the same order.
+ * The books themselves live in a columnar {@link BookStore}, and the Book objects this
+ * class returns are built from it on request: every call returns new objects. Book does
+ * not override equals and hashCode, so a book found twice is two unequal objects, and
+ * caches keyed by Book, such as the sort keys of {@link SortService}, never recognize a
+ * book returned by an earlier call. Keep the objects, or key by book ID.
+ * A {@link RankedSearchIndex} over the same ordinals serves relevance-ranked searches,
+ * and a {@link FacetIndex} narrows the catalog by category, author and availability and
+ * counts the books behind each facet value.
+ * <p>
+ * Available copy counts are kept current by the availability events. They are read from
+ * the database again every few minutes, in the background when facets are next used, so a
+ * missed or duplicated event cannot skew them for good. A book changed while the counts
+ * are being read keeps its count from events, since the query may or may not have seen
+ * the change, and another read follows shortly to settle it.
+ */
 public class Catalog {
+
+    private static final long AVAILABILITY_RESYNC_MS = 5 * 60_000;
+    private static final long AVAILABILITY_RETRY_MS = 10_000;
+
+    private static volatile Catalog shared;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Integer> ordinalsById = new HashMap<>();
+    // Replaced together by compactLocked
+    private BookStore store = new BookStore();
+    private TrigramIndex titleIndex = new TrigramIndex();
+    private TrigramIndex authorIndex = new TrigramIndex();
+    private RankedSearchIndex rankedIndex = new RankedSearchIndex();
+    private FacetIndex facets = new FacetIndex();
+    private int removedSinceCompaction;
+    private final AtomicBoolean resyncing = new AtomicBoolean();
+    private volatile long nextResyncAtMillis;
+    // While the counts are being read: the books added or changed since then
+    private Set<Integer> changedDuringResync;
+
+    /**
+     * Returns the catalog shared by the whole application, loading it from the database
+     * on first use.
+     *
+     * @return The shared Catalog.
+     */
+    public static Catalog getShared() {
+        Catalog current = shared;
+        if (current == null) {
+            synchronized (Catalog.class) {
+                current = shared;
+                if (current == null) {
+                    current = new Catalog();
+                    current.subscribeToChanges();
+                    current.addBooks(Book.viewAllBooks());
+                    current.resyncAvailability();
+                    shared = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Keeps this catalog in step with books added or deleted, and copies borrowed or
+     * returned, by this or any other client.
+     */
+    public void subscribeToChanges() {
+        CatalogEventBus.subscribe(event -> {
+            switch (event.type()) {
+                case BOOK_ADDED, BOOKS_ADDED -> addBooks(event.addedBooks()); // One write lock per event
+                case BOOK_DELETED -> removeBook(event.bookId());
+                case AVAILABILITY_CHANGED -> adjustAvailableCopies(event.bookId(), event.availabilityDelta());
+                default -> {
+                    // Loan events come with an availability change
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds books to the catalog and indexes their titles and authors.
+     *
+     * @param books The books to add. Books already in the catalog are replaced.
+     */
+    public void addBooks(List<Book> books) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                addLocked(book);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a single book to the catalog, replacing any book with the same ID.
+     *
+     * @param book The book to add.
+     */
+    public void addBook(Book book) {
+        lock.writeLock().lock();
+        try {
+            addLocked(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a book from the catalog and its indexes.
+     *
+     * @param bookId The ID of the book to remove.
+     * @return true if the book was in the catalog, false otherwise.
+     */
+    public boolean removeBook(int bookId) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the number of available copies of a book, for example after a checkout.
+     *
+     * @param bookId The ID of the book.
+     * @param delta  The change in available copies.
+     */
+    public void adjustAvailableCopies(int bookId, int delta) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalsById.get(bookId);
+            if (ordinal != null) {
+                facets.setAvailableCopies(ordinal, facets.getAvailableCopies(ordinal) + delta);
+            }
+            if (changedDuringResync != null) {
+                changedDuringResync.add(bookId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up a book by its ID. Each call builds a new Book; see the class description.
+     *
+     * @param bookId The ID of the book.
+     * @return The Book, or null if it is not in the catalog.
+     */
+    public Book getBook(int bookId) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinalsById.get(bookId);
+            return ordinal == null ? null : store.get(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the books whose title contains the given text, ignoring case. A Book is built
+     * for every match, and a text of one or two letters matches most of the catalog, so
+     * prefer {@link #searchByTitle(String, int)} where only the first results are shown.
+     *
+     * @param text The text to look for.
+     * @return The matching books, in the order they were added to the catalog.
+     */
+    public List<Book> searchByTitle(String text) {
+        return searchByTitle(text, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first books whose title contains the given text, ignoring case. The search
+     * stops once enough books are found.
+     *
+     * @param text  The text to look for.
+     * @param limit The maximum number of books to return.
+     * @return The matching books, in the order they were added to the catalog.
+     */
+    public List<Book> searchByTitle(String text, int limit) {
+        return search(titleIndex, BookStore.Field.TITLE, text, limit);
+    }
+
+    /**
+     * Finds the books whose author contains the given text, ignoring case. A Book is built
+     * for every match, so prefer {@link #searchByAuthor(String, int)} where only the first
+     * results are shown.
+     *
+     * @param text The text to look for.
+     * @return The matching books, in the order they were added to the catalog.
+     */
+    public List<Book> searchByAuthor(String text) {
+        return searchByAuthor(text, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first books whose author contains the given text, ignoring case. The search
+     * stops once enough books are found.
+     *
+     * @param text  The text to look for.
+     * @param limit The maximum number of books to return.
+     * @return The matching books, in the order they were added to the catalog.
+     */
+    public List<Book> searchByAuthor(String text, int limit) {
+        return search(authorIndex, BookStore.Field.AUTHOR, text, limit);
+    }
+
+    /**
+     * Finds the books most relevant to a free-text query over titles and authors,
+     * tolerating small misspellings.
+     *
+     * @param query The user's query.
+     * @param limit The maximum number of results to return.
+     * @return The best matches, highest score first.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            List<SearchHit> hits = new ArrayList<>();
+            for (RankedSearchIndex.ScoredOrdinal scored : rankedIndex.search(query, limit)) {
+                hits.add(new SearchHit(store.get(scored.ordinal()), scored.score()));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the books matching the selected facets.
+     *
+     * @param filter The selected facets.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, in the order they were added to the catalog.
+     */
+    public List<Book> filter(FacetFilter filter, int limit) {
+        List<Book> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        resyncAvailabilityIfStale();
+        lock.readLock().lock();
+        try {
+            facets.matching(filter).forEach(ordinal -> {
+                results.add(store.get(ordinal));
+                return results.size() < limit;
+            });
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the books behind each facet value for the selected facets. The counts of a
+     * facet apply the other facets' selections but not its own.
+     *
+     * @param filter      The selected facets.
+     * @param authorLimit The maximum number of authors to count, those with most books first.
+     * @return The counts.
+     */
+    public FacetCounts countFacets(FacetFilter filter, int authorLimit) {
+        resyncAvailabilityIfStale();
+        lock.readLock().lock();
+        try {
+            return facets.count(filter, authorLimit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books in the catalog.
+     *
+     * @return The number of books.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinalsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Normalizes text for case-insensitive matching.
+     *
+     * @param text The text to normalize, may be null.
+     * @return The normalized text, never null.
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private List<Book> search(TrigramIndex index, BookStore.Field field, String text, int limit) {
+        String term = normalize(text);
+        BookStore.Needle needle = BookStore.Needle.of(term);
+        List<Book> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] candidates = index.candidates(term);
+            if (candidates == null) {
+                // Terms shorter than a trigram are matched by scanning the stored values
+                store.scan(field, needle, ordinal -> {
+                    results.add(store.get(ordinal));
+                    return results.size() < limit;
+                });
+                return results;
+            }
+            for (int ordinal : candidates) {
+                // Sharing every trigram does not guarantee the trigrams are adjacent
+                if (store.isLive(ordinal) && store.contains(field, ordinal, needle)) {
+                    results.add(store.get(ordinal));
+                    if (results.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the available copies of every book with one grouped query and replaces the
+     * counts kept from events. The query runs outside the lock; books changed meanwhile
+     * keep their counts from events and are read again by a resync shortly after. Does
+     * nothing if a resync is already running.
+     */
+    public void resyncAvailability() {
+        if (!resyncing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            resyncAvailabilityOnce();
+        } finally {
+            resyncing.set(false);
+        }
+    }
+
+    private void resyncAvailabilityOnce() {
+        lock.writeLock().lock();
+        try {
+            changedDuringResync = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        AvailabilityService availability = new AvailabilityService();
+        boolean loaded = availability.loadAll();
+        boolean settled;
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                for (Map.Entry<Integer, Integer> entry : ordinalsById.entrySet()) {
+                    // The query may have run before or after such a change, so its count is not trusted
+                    if (!changedDuringResync.contains(entry.getKey())) {
+                        facets.setAvailableCopies(entry.getValue(), availability.getAvailableCopies(entry.getKey()));
+                    }
+                }
+            }
+            settled = changedDuringResync.isEmpty();
+            changedDuringResync = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // A failed query is tried again after the next interval
+        nextResyncAtMillis = System.currentTimeMillis() + (settled ? AVAILABILITY_RESYNC_MS : AVAILABILITY_RETRY_MS);
+    }
+
+    private void resyncAvailabilityIfStale() {
+        if (System.currentTimeMillis() > nextResyncAtMillis && !resyncing.get()) {
+            CompletableFuture.runAsync(this::resyncAvailability);
+        }
+    }
+
+    private void addLocked(Book book) {
+        // A new book has all its copies available; a replaced one keeps its count
+        Integer previous = ordinalsById.get(book.getId());
+        if (previous != null && store.matches(previous, book)) {
+            return; // The same book announced again, e.g. by a reload
+        }
+        int availableCopies = previous != null ? facets.getAvailableCopies(previous) : book.getTotalCopies();
+        removeLocked(book.getId());
+        if (changedDuringResync != null && previous == null) {
+            changedDuringResync.add(book.getId());
+        }
+        indexLocked(book, availableCopies);
+    }
+
+    private void indexLocked(Book book, int availableCopies) {
+        int ordinal = store.add(book);
+        String title = normalize(book.getTitle());
+        String author = store.getNormalizedAuthor(ordinal);
+        ordinalsById.put(book.getId(), ordinal);
+        titleIndex.add(ordinal, title);
+        authorIndex.add(ordinal, author);
+        rankedIndex.add(ordinal, title, author);
+        facets.add(ordinal, book.getCategoryId(), book.getAuthor(), availableCopies);
+    }
+
+    private boolean removeLocked(int bookId) {
+        Integer ordinal = ordinalsById.remove(bookId);
+        if (ordinal == null) {
+            return false;
+        }
+        rankedIndex.remove(ordinal, normalize(store.getTitle(ordinal)), store.getNormalizedAuthor(ordinal));
+        facets.remove(ordinal);
+        // Removed books fail verification, so the trigram postings can be cleaned up later
+        store.remove(ordinal);
+
+        removedSinceCompaction++;
+        if (removedSinceCompaction > 1000 && removedSinceCompaction > ordinalsById.size() / 4) {
+            compactLocked();
+        }
+        return true;
+    }
+
+    // Renumbers the live books in their current order, dropping the rows and postings of removed ones
+    private void compactLocked() {
+        BookStore oldStore = store;
+        FacetIndex oldFacets = facets;
+        store = new BookStore();
+        titleIndex = new TrigramIndex();
+        authorIndex = new TrigramIndex();
+        rankedIndex = new RankedSearchIndex();
+        facets = new FacetIndex();
+        ordinalsById.clear();
+        for (int ordinal = 0; ordinal < oldStore.size(); ordinal++) {
+            if (oldStore.isLive(ordinal)) {
+                indexLocked(oldStore.get(ordinal), oldFacets.getAvailableCopies(ordinal));
+            }
+        }
+        removedSinceCompaction = 0;
+    }
 }
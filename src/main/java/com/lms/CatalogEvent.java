@@ -0,0 +1,76 @@
+package com.lms;
+
+import java.util.List;
+
+/**
+ * A single change to the catalog or to a loan, published through {@link CatalogEventBus}
+ * so that views and caches can patch the affected rows instead of reloading everything.
+ *
+ * @param type              What changed.
+ * @param bookId            The ID of the affected book.
+ * @param book              The added book for {@link Type#BOOK_ADDED}, otherwise null.
+ * @param books             The added books for {@link Type#BOOKS_ADDED}, otherwise null.
+ * @param availabilityDelta The change in available copies for {@link Type#AVAILABILITY_CHANGED}.
+ * @param username          The borrower for loan events, otherwise null.
+ */
+public record CatalogEvent(Type type, int bookId, Book book, List<Book> books, int availabilityDelta, String username) {
+
+    /**
+     * The kinds of change a CatalogEvent can describe.
+     */
+    public enum Type {
+        BOOK_ADDED,
+        /**
+         * Many books added at once, such as a chunk of a catalog import. Only published on
+         * the bus; the change log records a {@link #BOOK_ADDED} entry per book.
+         */
+        BOOKS_ADDED,
+        BOOK_DELETED,
+        AVAILABILITY_CHANGED,
+        LOAN_OPENED,
+        LOAN_CLOSED
+    }
+
+    public static CatalogEvent bookAdded(Book book) {
+        return new CatalogEvent(Type.BOOK_ADDED, book.getId(), book, null, 0, null);
+    }
+
+    /**
+     * Creates one event for many added books, so listeners can apply them in one pass.
+     *
+     * @param books The added books.
+     * @return The event; its book ID is 0.
+     */
+    public static CatalogEvent booksAdded(List<Book> books) {
+        return new CatalogEvent(Type.BOOKS_ADDED, 0, null, List.copyOf(books), 0, null);
+    }
+
+    public static CatalogEvent bookDeleted(int bookId) {
+        return new CatalogEvent(Type.BOOK_DELETED, bookId, null, null, 0, null);
+    }
+
+    public static CatalogEvent availabilityChanged(int bookId, int delta) {
+        return new CatalogEvent(Type.AVAILABILITY_CHANGED, bookId, null, null, delta, null);
+    }
+
+    public static CatalogEvent loanOpened(int bookId, String username) {
+        return new CatalogEvent(Type.LOAN_OPENED, bookId, null, null, 0, username);
+    }
+
+    public static CatalogEvent loanClosed(int bookId, String username) {
+        return new CatalogEvent(Type.LOAN_CLOSED, bookId, null, null, 0, username);
+    }
+
+    /**
+     * Returns the books added by a {@link Type#BOOK_ADDED} or {@link Type#BOOKS_ADDED} event.
+     *
+     * @return The added books, or an empty list for other events.
+     */
+    public List<Book> addedBooks() {
+        return switch (type) {
+            case BOOK_ADDED -> List.of(book);
+            case BOOKS_ADDED -> books;
+            default -> List.of();
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package com.lms;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The CatalogEventBus class delivers {@link CatalogEvent}s to every subscribed listener.
+ * Listeners run synchronously on the thread that published the event, which is usually a
+ * background thread; user interface listeners must hand the work to their own thread.
+ */
+public class CatalogEventBus {
+
+    private static final List<Consumer<CatalogEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private CatalogEventBus() {
+    }
+
+    /**
+     * Registers a listener for all catalog events.
+     *
+     * @param listener The listener to call for each event.
+     * @return An action that unsubscribes the listener again.
+     */
+    public static Runnable subscribe(Consumer<CatalogEvent> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Delivers an event to every listener. A failing listener does not stop delivery
+     * to the others.
+     *
+     * @param event The event to publish.
+     */
+    public static void publish(CatalogEvent event) {
+        for (Consumer<CatalogEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                System.out.println("Error handling catalog event " + event.type() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.lms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The CategoryRegistry class holds the {@code category} table in memory, loaded once at
+ * first use, so turning a category ID into its name or a name into its ID never needs a
+ * query. Names are kept in an array indexed by ID, which is what table cells look up on
+ * every render; IDs are found by name, ignoring case, through a hash map.
+ * <p>
+ * Lookups always answer from the loaded copy and never block. The table is read again in
+ * the background when the copy is older than a minute, or when a lookup misses, so
+ * categories added or renamed in the database appear without a restart. Subscribers are
+ * told whenever a reload changed anything.
+ */
+public final class CategoryRegistry {
+
+    private static final long REFRESH_INTERVAL_MS = 60_000;
+    // A miss reloads at most this often, so repeated lookups of a bad ID do not flood the database
+    private static final long MISS_RELOAD_INTERVAL_MS = 5_000;
+    // IDs below this are held in the array; any others, in a map
+    private static final int DENSE_ID_LIMIT = 4_096;
+
+    private static volatile CategoryRegistry shared;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private volatile long lastMissReloadMillis;
+
+    // An immutable copy of the table; replaced as a whole on reload
+    private record Snapshot(String[] namesById, Map<Integer, String> sparseNames, Map<String, Integer> idsByName,
+                            Map<Integer, String> categories, long loadedAtMillis) {
+
+        String nameOf(int id) {
+            if (id >= 0 && id < namesById.length) {
+                return namesById[id];
+            }
+            return sparseNames.get(id);
+        }
+    }
+
+    private CategoryRegistry() {
+        this.snapshot = load();
+    }
+
+    /**
+     * Returns the registry shared by the whole application, loading the categories the
+     * first time.
+     *
+     * @return The shared registry.
+     */
+    public static CategoryRegistry getShared() {
+        CategoryRegistry registry = shared;
+        if (registry == null) {
+            synchronized (CategoryRegistry.class) {
+                registry = shared;
+                if (registry == null) {
+                    registry = new CategoryRegistry();
+                    shared = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the name of a category.
+     *
+     * @param categoryId The category ID.
+     * @return The name, or null if there is no such category.
+     */
+    public String nameOf(int categoryId) {
+        Snapshot current = current();
+        String name = current.nameOf(categoryId);
+        if (name == null) {
+            reloadAfterMiss();
+        }
+        return name;
+    }
+
+    /**
+     * Returns the name of a category for display.
+     *
+     * @param categoryId The category ID.
+     * @return The name, or "Unknown" if there is no such category.
+     */
+    public String displayNameOf(int categoryId) {
+        String name = nameOf(categoryId);
+        return name != null ? name : "Unknown";
+    }
+
+    /**
+     * Returns the ID of a category.
+     *
+     * @param name The category name, compared ignoring case and surrounding spaces.
+     * @return The category ID, or -1 if there is no such category.
+     */
+    public int idOf(String name) {
+        Integer id = current().idsByName().get(normalize(name));
+        if (id == null) {
+            reloadAfterMiss();
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the category names in ID order, for choosing a category.
+     *
+     * @return The names.
+     */
+    public List<String> getNames() {
+        return List.copyOf(current().categories().values());
+    }
+
+    /**
+     * Returns every category.
+     *
+     * @return The names keyed by ID, in ID order.
+     */
+    public Map<Integer, String> getCategories() {
+        return current().categories();
+    }
+
+    /**
+     * Reads the table again now, and tells subscribers if anything changed.
+     */
+    public void refresh() {
+        Snapshot loaded = load();
+        Snapshot previous = snapshot;
+        snapshot = loaded;
+        if (!loaded.categories().equals(previous.categories())) {
+            listeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Registers a listener called after a reload changed the categories. It is called on
+     * the thread that reloaded them.
+     *
+     * @param listener The listener.
+     * @return An action that removes the listener again.
+     */
+    public Runnable subscribe(Runnable listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (System.currentTimeMillis() - current.loadedAtMillis() > REFRESH_INTERVAL_MS) {
+            reloadInBackground();
+        }
+        return current;
+    }
+
+    private void reloadAfterMiss() {
+        long now = System.currentTimeMillis();
+        if (now - lastMissReloadMillis > MISS_RELOAD_INTERVAL_MS) {
+            lastMissReloadMillis = now;
+            reloadInBackground();
+        }
+    }
+
+    private void reloadInBackground() {
+        if (reloading.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    refresh();
+                } finally {
+                    reloading.set(false);
+                }
+            });
+        }
+    }
+
+    // On failure keeps what was loaded before, or starts empty, and tries again later
+    private Snapshot load() {
+        Map<Integer, String> categories = new TreeMap<>();
+        String sql = "SELECT category_id, name FROM category";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                categories.put(rs.getInt(1), rs.getString(2).trim());
+            }
+        } catch (SQLException e) {
+            System.out.println("Error loading categories: " + e.getMessage());
+            Snapshot previous = snapshot;
+            if (previous != null) {
+                return new Snapshot(previous.namesById(), previous.sparseNames(), previous.idsByName(),
+                        previous.categories(), System.currentTimeMillis());
+            }
+        }
+
+        int highestDenseId = -1;
+        for (int id : categories.keySet()) {
+            if (id >= 0 && id < DENSE_ID_LIMIT) {
+                highestDenseId = Math.max(highestDenseId, id);
+            }
+        }
+        String[] namesById = new String[highestDenseId + 1];
+        Map<Integer, String> sparseNames = new HashMap<>();
+        Map<String, Integer> idsByName = new HashMap<>();
+        for (Map.Entry<Integer, String> category : categories.entrySet()) {
+            int id = category.getKey();
+            if (id >= 0 && id < DENSE_ID_LIMIT) {
+                namesById[id] = category.getValue();
+            } else {
+                sparseNames.put(id, category.getValue());
+            }
+            idsByName.putIfAbsent(normalize(category.getValue()), id);
+        }
+        return new Snapshot(namesById, sparseNames, idsByName,
+                Collections.unmodifiableMap(new LinkedHashMap<>(categories)), System.currentTimeMillis());
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,292 @@
+package com.lms;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The ChangeLog class records every change to {@code books} and {@code copies} in the
+ * {@code catalog_changes} table, in the same transaction as the change itself. Each row
+ * gets a monotonically increasing sequence number, so every client can tail the log and
+ * learn about changes made by other clients.
+ * <p>
+ * Retention: clients tail the log from its end, so old entries only matter to incremental
+ * backups, which read the entries after the newest backup of their chain. After every
+ * backup, {@link DataBackupService#pruneChangeLog} deletes the entries that no chain under
+ * that backup root still needs; see there. Until a first backup is taken nothing is
+ * deleted.
+ */
+public class ChangeLog {
+
+    /**
+     * Identifies this running client, so it can skip its own entries when tailing the log.
+     */
+    public static final String ORIGIN = UUID.randomUUID().toString();
+
+    /**
+     * The most entries one transaction may write. Bulk writers such as imports split their
+     * work into transactions of at most this size, which bounds how far below the newest
+     * visible entry an entry that is still uncommitted can be.
+     */
+    public static final int MAX_ENTRIES_PER_TRANSACTION = 2_000;
+
+    private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS catalog_changes (" +
+            "seq BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "book_id INT NOT NULL, " +
+            "change_type VARCHAR(32) NOT NULL, " +
+            "username VARCHAR(255) NULL, " +
+            "origin CHAR(36) NOT NULL, " +
+            "changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3))";
+
+    private static final long PRUNE_RANGE = 10_000;
+
+    private static volatile boolean tableReady;
+
+    private ChangeLog() {
+    }
+
+    /**
+     * An entry read back from the change log.
+     *
+     * @param seq      The entry's sequence number.
+     * @param bookId   The ID of the affected book.
+     * @param type     What changed.
+     * @param username The borrower for loan changes, otherwise null.
+     * @param origin   The client that made the change.
+     */
+    public record Entry(long seq, int bookId, CatalogEvent.Type type, String username, String origin) {
+    }
+
+    /**
+     * A range of sequence numbers, both ends included.
+     *
+     * @param from The first sequence number.
+     * @param to   The last sequence number.
+     */
+    public record SeqRange(long from, long to) {
+    }
+
+    /**
+     * Creates the change log table if it does not exist yet. MySQL commits any open
+     * transaction on DDL, so this must run before a transaction is started, never inside one.
+     */
+    public static void ensureTable() {
+        if (tableReady) {
+            return;
+        }
+        DatabaseConnection dbConnection = new DatabaseConnection();
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_TABLE_SQL);
+            tableReady = true;
+        } catch (SQLException e) {
+            System.out.println("Error creating change log table: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends an entry on the caller's connection, so it commits or rolls back together
+     * with the change it describes.
+     *
+     * @param conn     The connection the change was made on.
+     * @param bookId   The ID of the affected book.
+     * @param type     What changed.
+     * @param username The borrower for loan changes, otherwise null.
+     * @throws SQLException if the entry cannot be written.
+     */
+    public static void record(Connection conn, int bookId, CatalogEvent.Type type, String username) throws SQLException {
+        String sql = "INSERT INTO catalog_changes (book_id, change_type, username, origin) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, bookId);
+            stmt.setString(2, type.name());
+            stmt.setString(3, username);
+            stmt.setString(4, ORIGIN);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Appends one entry per book in a single batch on the caller's connection.
+     *
+     * @param conn    The connection the changes were made on.
+     * @param bookIds The IDs of the affected books.
+     * @param type    What changed.
+     * @throws SQLException if the entries cannot be written.
+     */
+    public static void recordAll(Connection conn, List<Integer> bookIds, CatalogEvent.Type type) throws SQLException {
+        recordAll(conn, bookIds, type, null);
+    }
+
+    /**
+     * Appends one entry per book in a single batch on the caller's connection.
+     *
+     * @param conn     The connection the changes were made on.
+     * @param bookIds  The IDs of the affected books; a book may occur more than once.
+     * @param type     What changed.
+     * @param username The borrower for loan changes, otherwise null.
+     * @throws SQLException if the entries cannot be written.
+     */
+    public static void recordAll(Connection conn, List<Integer> bookIds, CatalogEvent.Type type, String username)
+            throws SQLException {
+        recordLoans(conn, type, bookIds, Collections.nCopies(bookIds.size(), username));
+    }
+
+    /**
+     * Appends one loan entry per book in a single batch on the caller's connection, for
+     * loans of different users.
+     *
+     * @param conn      The connection the changes were made on.
+     * @param type      What changed.
+     * @param bookIds   The IDs of the affected books.
+     * @param usernames The borrower of each loan, in the same order as the book IDs.
+     * @throws SQLException if the entries cannot be written.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_ENTRIES_PER_TRANSACTION} entries.
+     */
+    public static void recordLoans(Connection conn, CatalogEvent.Type type, List<Integer> bookIds, List<String> usernames)
+            throws SQLException {
+        if (bookIds.size() > MAX_ENTRIES_PER_TRANSACTION) {
+            throw new IllegalArgumentException("At most " + MAX_ENTRIES_PER_TRANSACTION
+                    + " change log entries per transaction, got " + bookIds.size());
+        }
+        String sql = "INSERT INTO catalog_changes (book_id, change_type, username, origin) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < bookIds.size(); i++) {
+                stmt.setInt(1, bookIds.get(i));
+                stmt.setString(2, type.name());
+                stmt.setString(3, usernames.get(i));
+                stmt.setString(4, ORIGIN);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Returns the highest sequence number written so far.
+     *
+     * @return The latest sequence number, or 0 if the log is empty.
+     * @throws SQLException if the log cannot be read.
+     */
+    public static long latestSeq() throws SQLException {
+        String sql = "SELECT COALESCE(MAX(seq), 0) FROM catalog_changes";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Reads entries with a sequence number above the given one, oldest first.
+     *
+     * @param afterSeq Only entries after this sequence number are returned.
+     * @param limit    The maximum number of entries to return.
+     * @return The entries in sequence order.
+     * @throws SQLException if the log cannot be read.
+     */
+    public static List<Entry> readAfter(long afterSeq, int limit) throws SQLException {
+        String sql = "SELECT seq, book_id, change_type, username, origin FROM catalog_changes " +
+                "WHERE seq > ? ORDER BY seq LIMIT ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, afterSeq);
+            stmt.setInt(2, limit);
+            return readEntries(stmt);
+        }
+    }
+
+    /**
+     * Reads the entries inside the given ranges of sequence numbers, for filling gaps left
+     * by transactions that committed after later ones.
+     *
+     * @param ranges The ranges to look in.
+     * @return The entries that exist, in sequence order.
+     * @throws SQLException if the log cannot be read.
+     */
+    public static List<Entry> readRanges(Collection<SeqRange> ranges) throws SQLException {
+        if (ranges.isEmpty()) {
+            return List.of();
+        }
+        StringBuilder sql = new StringBuilder("SELECT seq, book_id, change_type, username, origin FROM catalog_changes " +
+                "WHERE ");
+        for (int i = 0; i < ranges.size(); i++) {
+            sql.append(i == 0 ? "seq BETWEEN ? AND ?" : " OR seq BETWEEN ? AND ?");
+        }
+        sql.append(" ORDER BY seq");
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (SeqRange range : ranges) {
+                stmt.setLong(index++, range.from());
+                stmt.setLong(index++, range.to());
+            }
+            return readEntries(stmt);
+        }
+    }
+
+    /**
+     * Deletes the entries up to and including a sequence number. Entries are deleted one
+     * range of sequence numbers at a time, so no single statement locks much of the table
+     * while checkouts keep appending to it.
+     *
+     * @param throughSeq The last sequence number to delete.
+     * @return The number of entries deleted.
+     * @throws SQLException if the entries cannot be deleted.
+     */
+    public static long prune(long throughSeq) throws SQLException {
+        String minSql = "SELECT MIN(seq) FROM catalog_changes WHERE seq <= ?";
+        String deleteSql = "DELETE FROM catalog_changes WHERE seq >= ? AND seq <= ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+        long deleted = 0;
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement minStmt = conn.prepareStatement(minSql);
+             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+            minStmt.setLong(1, throughSeq);
+            long from;
+            try (ResultSet rs = minStmt.executeQuery()) {
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return 0;
+                }
+                from = rs.getLong(1);
+            }
+            while (from <= throughSeq) {
+                long to = Math.min(throughSeq, from + PRUNE_RANGE - 1);
+                deleteStmt.setLong(1, from);
+                deleteStmt.setLong(2, to);
+                deleted += deleteStmt.executeUpdate();
+                from = to + 1;
+            }
+        }
+        return deleted;
+    }
+
+    private static List<Entry> readEntries(PreparedStatement stmt) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                entries.add(new Entry(
+                        rs.getLong("seq"),
+                        rs.getInt("book_id"),
+                        CatalogEvent.Type.valueOf(rs.getString("change_type")),
+                        rs.getString("username"),
+                        rs.getString("origin")
+                ));
+            }
+        }
+        return entries;
+    }
+}
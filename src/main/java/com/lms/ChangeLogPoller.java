@@ -0,0 +1,179 @@
+package com.lms;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ChangeLogPoller class tails the {@code catalog_changes} table in the background and
+ * republishes changes made by other clients on the {@link CatalogEventBus}, so every
+ * cache that listens to the bus stays correct across clients.
+ * <p>
+ * Sequence numbers are handed out when a transaction inserts its entry but become visible
+ * when it commits, so a later number can appear before an earlier one. Skipped numbers are
+ * therefore remembered and looked up again until they appear or are old enough to belong
+ * to a transaction that rolled back. They are remembered as ranges, however many there
+ * are, so a bulk import holding thousands of numbers open is caught up on like a single
+ * checkout.
+ * <p>
+ * Books added by other clients are loaded together: consecutive add entries of a poll are
+ * collected and read with one query per chunk of IDs, then published as one
+ * {@link CatalogEvent.Type#BOOKS_ADDED} event, so a bulk import elsewhere does not turn into
+ * one query and one event per book here.
+ */
+public class ChangeLogPoller {
+
+    private static final long POLL_INTERVAL_MS = 1_000;
+    private static final int BATCH_SIZE = 500;
+    private static final long GAP_TIMEOUT_MS = 60_000;
+
+    private static ChangeLogPoller running;
+
+    private final ScheduledExecutorService scheduler;
+    private final List<Gap> pendingGaps = new ArrayList<>(); // In sequence order
+    private long lastSeq = -1;
+    private boolean lastPollFailed;
+
+    private ChangeLogPoller() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-log-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts tailing the change log from its current end, unless already started.
+     */
+    public static synchronized void start() {
+        if (running == null) {
+            running = new ChangeLogPoller();
+            running.scheduler.scheduleWithFixedDelay(running::poll, 0, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops tailing the change log.
+     */
+    public static synchronized void stop() {
+        if (running != null) {
+            running.scheduler.shutdownNow();
+            running = null;
+        }
+    }
+
+    private void poll() {
+        try {
+            if (lastSeq < 0) {
+                ChangeLog.ensureTable();
+                // Caches are loaded from the current state, so older entries are irrelevant
+                lastSeq = ChangeLog.latestSeq();
+            }
+            List<ChangeLog.Entry> entries = new ArrayList<>(fillGaps());
+            List<ChangeLog.Entry> batch;
+            do {
+                batch = ChangeLog.readAfter(lastSeq, BATCH_SIZE);
+                for (ChangeLog.Entry entry : batch) {
+                    if (entry.seq() > lastSeq + 1) {
+                        pendingGaps.add(new Gap(lastSeq + 1, entry.seq() - 1, System.currentTimeMillis()));
+                    }
+                    lastSeq = entry.seq();
+                }
+                entries.addAll(batch);
+            } while (batch.size() == BATCH_SIZE);
+
+            // Adds are held back and loaded together, but published before any later change
+            List<Integer> addedIds = new ArrayList<>();
+            for (ChangeLog.Entry entry : entries) {
+                if (ChangeLog.ORIGIN.equals(entry.origin())) {
+                    continue; // Our own changes were published when they were made
+                }
+                if (entry.type() == CatalogEvent.Type.BOOK_ADDED) {
+                    addedIds.add(entry.bookId());
+                } else {
+                    publishAdded(addedIds);
+                    publish(entry);
+                }
+            }
+            publishAdded(addedIds);
+            long now = System.currentTimeMillis();
+            pendingGaps.removeIf(gap -> now - gap.noticedAt() > GAP_TIMEOUT_MS);
+            lastPollFailed = false;
+        } catch (SQLException e) {
+            if (!lastPollFailed) { // Report an outage once, not once per second
+                System.out.println("Error polling change log: " + e.getMessage());
+            }
+            lastPollFailed = true;
+        }
+    }
+
+    // Reads the entries that appeared inside the gaps; each one splits its gap, the rest keeps waiting
+    private List<ChangeLog.Entry> fillGaps() throws SQLException {
+        List<ChangeLog.Entry> found = new ArrayList<>();
+        for (int from = 0; from < pendingGaps.size(); from += BATCH_SIZE) {
+            List<ChangeLog.SeqRange> ranges = new ArrayList<>();
+            for (Gap gap : pendingGaps.subList(from, Math.min(pendingGaps.size(), from + BATCH_SIZE))) {
+                ranges.add(new ChangeLog.SeqRange(gap.from(), gap.to()));
+            }
+            found.addAll(ChangeLog.readRanges(ranges));
+        }
+        if (found.isEmpty()) {
+            return found;
+        }
+        List<Gap> remaining = new ArrayList<>();
+        int next = 0;
+        for (Gap gap : pendingGaps) {
+            long missingFrom = gap.from();
+            while (next < found.size() && found.get(next).seq() <= gap.to()) {
+                long seq = found.get(next++).seq();
+                if (seq > missingFrom) {
+                    remaining.add(new Gap(missingFrom, seq - 1, gap.noticedAt()));
+                }
+                missingFrom = seq + 1;
+            }
+            if (missingFrom <= gap.to()) {
+                remaining.add(new Gap(missingFrom, gap.to(), gap.noticedAt()));
+            }
+        }
+        pendingGaps.clear();
+        pendingGaps.addAll(remaining);
+        return found;
+    }
+
+    // Books deleted again since they were added are simply not found
+    private void publishAdded(List<Integer> bookIds) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < bookIds.size(); from += BATCH_SIZE) {
+            List<Book> books = Book.findByIds(bookIds.subList(from, Math.min(bookIds.size(), from + BATCH_SIZE)));
+            if (!books.isEmpty()) {
+                CatalogEventBus.publish(CatalogEvent.booksAdded(books));
+            }
+        }
+        bookIds.clear();
+    }
+
+    private void publish(ChangeLog.Entry entry) {
+        switch (entry.type()) {
+            case BOOK_DELETED -> CatalogEventBus.publish(CatalogEvent.bookDeleted(entry.bookId()));
+            case LOAN_OPENED -> {
+                CatalogEventBus.publish(CatalogEvent.loanOpened(entry.bookId(), entry.username()));
+                CatalogEventBus.publish(CatalogEvent.availabilityChanged(entry.bookId(), -1));
+            }
+            case LOAN_CLOSED -> {
+                CatalogEventBus.publish(CatalogEvent.loanClosed(entry.bookId(), entry.username()));
+                CatalogEventBus.publish(CatalogEvent.availabilityChanged(entry.bookId(), +1));
+            }
+            default -> {
+                // Adds are published by publishAdded; availability changes are implied by the loan entries
+            }
+        }
+    }
+
+    private record Gap(long from, long to, long noticedAt) {
+    }
+}
@@ -1,4 +1,401 @@
 package com.lms;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The CheckInService class takes back borrowed copies. A whole pile of returned books is
+ * processed in one transaction: the borrowed copies are looked up and locked with one
+ * statement and released with one batch, however many books the pile holds.
+ * <p>
+ * For a return desk with a barcode scanner, {@link #openScanStation()} accepts scanned
+ * copy IDs immediately and checks them in from a background worker, see {@link ScanStation}.
+ */
 public class CheckInService {
+
+    // Enough for several emptied book drops before scans have to wait for the database
+    private static final int STATION_QUEUE_CAPACITY = 10_000;
+    private static final long STATION_OFFER_TIMEOUT_MS = 2_000;
+
+    /**
+     * The outcome of returning one book.
+     *
+     * @param status What happened.
+     * @param copyId The ID of the copy that was taken back, or -1 if none was.
+     */
+    public record CheckInResult(Status status, int copyId) {
+
+        public enum Status { RETURNED, NOT_BORROWED, FAILED }
+
+        public boolean isSuccess() {
+            return status == Status.RETURNED;
+        }
+    }
+
+    /**
+     * The outcome of one barcode scan at a check-in station.
+     *
+     * @param copyId   The scanned copy.
+     * @param status   What happened.
+     * @param bookId   The book the copy belongs to, or -1 if unknown.
+     * @param borrower The user whose loan was closed, or null if none was.
+     */
+    public record ScanResult(int copyId, Status status, int bookId, String borrower) {
+
+        /**
+         * ALREADY_CHECKED_IN acknowledges a copy that was not on loan, e.g. one scanned twice.
+         * BUSY means the station fell too far behind the database and the copy must be scanned again.
+         */
+        public enum Status { CHECKED_IN, ALREADY_CHECKED_IN, UNKNOWN_COPY, BUSY, FAILED }
+    }
+
+    /**
+     * Opens a check-in station whose background worker runs until the station is closed.
+     *
+     * @return The new station.
+     */
+    public ScanStation openScanStation() {
+        return new ScanStation(this, STATION_QUEUE_CAPACITY, STATION_OFFER_TIMEOUT_MS);
+    }
+
+    /**
+     * Takes back one copy of a book borrowed by a user.
+     *
+     * @param username The returning user.
+     * @param bookId   The ID of the book being returned.
+     * @return The copy that was taken back, or why none was.
+     */
+    public CheckInResult checkIn(String username, int bookId) {
+        return checkInAll(username, List.of(bookId)).get(0);
+    }
+
+    /**
+     * Takes back one copy of each book in a pile in a single transaction. Books the user
+     * has not borrowed are reported as such and do not affect the other items.
+     *
+     * @param username The returning user.
+     * @param bookIds  The IDs of the books being returned; a book listed twice is returned twice.
+     * @return One result per item, in the given order.
+     */
+    public List<CheckInResult> checkInAll(String username, List<Integer> bookIds) {
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+        ChangeLog.ensureTable();
+        Set<Integer> distinctIds = new LinkedHashSet<>(bookIds);
+        StringBuilder findSql = new StringBuilder("SELECT copy_id, book_id FROM copies " +
+                "WHERE borrowed_by = ? AND status = 'borrowed' AND book_id IN (");
+        for (int i = 0; i < distinctIds.size(); i++) {
+            findSql.append(i == 0 ? "?" : ", ?");
+        }
+        findSql.append(") ORDER BY borrowed_date, copy_id FOR UPDATE");
+        String releaseSql = "UPDATE copies SET status = 'available', borrowed_by = NULL, borrowed_date = NULL WHERE copy_id = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        List<CheckInResult> results = new ArrayList<>(bookIds.size());
+        List<Integer> returnedBookIds = new ArrayList<>();
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Map<Integer, List<Integer>> borrowedCopies = new HashMap<>();
+            try (PreparedStatement stmt = conn.prepareStatement(findSql.toString())) {
+                int index = 1;
+                stmt.setString(index++, username);
+                for (int bookId : distinctIds) {
+                    stmt.setInt(index++, bookId);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        borrowedCopies.computeIfAbsent(rs.getInt("book_id"), id -> new ArrayList<>())
+                                .add(rs.getInt("copy_id"));
+                    }
+                }
+            }
+
+            // The oldest loans of each book are closed first
+            Map<Integer, Integer> handedBack = new HashMap<>();
+            try (PreparedStatement stmt = conn.prepareStatement(releaseSql)) {
+                for (int bookId : bookIds) {
+                    List<Integer> copyIds = borrowedCopies.getOrDefault(bookId, List.of());
+                    int next = handedBack.merge(bookId, 1, Integer::sum) - 1;
+                    if (next < copyIds.size()) {
+                        stmt.setInt(1, copyIds.get(next));
+                        stmt.addBatch();
+                        returnedBookIds.add(bookId);
+                        results.add(new CheckInResult(CheckInResult.Status.RETURNED, copyIds.get(next)));
+                    } else {
+                        results.add(new CheckInResult(CheckInResult.Status.NOT_BORROWED, -1));
+                    }
+                }
+                if (!returnedBookIds.isEmpty()) {
+                    stmt.executeBatch();
+                }
+            }
+            if (!returnedBookIds.isEmpty()) {
+                ChangeLog.recordAll(conn, returnedBookIds, CatalogEvent.Type.LOAN_CLOSED, username);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.out.println("Error returning books: " + e.getMessage());
+            return Collections.nCopies(bookIds.size(), new CheckInResult(CheckInResult.Status.FAILED, -1));
+        }
+
+        for (int bookId : returnedBookIds) {
+            CatalogEventBus.publish(CatalogEvent.loanClosed(bookId, username));
+            CatalogEventBus.publish(CatalogEvent.availabilityChanged(bookId, +1));
+        }
+        return results;
+    }
+
+    /**
+     * Checks in scanned copies by copy ID in one transaction, whoever borrowed them.
+     * Copies that are not on loan are acknowledged without changes, so scanning a copy
+     * twice is harmless.
+     *
+     * @param copyIds The scanned copy IDs, without duplicates.
+     * @return The result for every given copy ID.
+     * @throws SQLException if the transaction fails; nothing is checked in then.
+     */
+    public Map<Integer, ScanResult> checkInCopies(Collection<Integer> copyIds) throws SQLException {
+        Map<Integer, ScanResult> results = new HashMap<>();
+        if (copyIds.isEmpty()) {
+            return results;
+        }
+        ChangeLog.ensureTable();
+        StringBuilder findSql = new StringBuilder("SELECT copy_id, book_id, status, borrowed_by FROM copies WHERE copy_id IN (");
+        for (int i = 0; i < copyIds.size(); i++) {
+            findSql.append(i == 0 ? "?" : ", ?");
+        }
+        findSql.append(") FOR UPDATE");
+        String releaseSql = "UPDATE copies SET status = 'available', borrowed_by = NULL, borrowed_date = NULL WHERE copy_id = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        List<Integer> returnedBookIds = new ArrayList<>();
+        List<String> borrowers = new ArrayList<>();
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement find = conn.prepareStatement(findSql.toString());
+                 PreparedStatement release = conn.prepareStatement(releaseSql)) {
+                int index = 1;
+                for (int copyId : copyIds) {
+                    find.setInt(index++, copyId);
+                }
+                try (ResultSet rs = find.executeQuery()) {
+                    while (rs.next()) {
+                        int copyId = rs.getInt("copy_id");
+                        int bookId = rs.getInt("book_id");
+                        String borrower = rs.getString("borrowed_by");
+                        if ("borrowed".equals(rs.getString("status"))) {
+                            release.setInt(1, copyId);
+                            release.addBatch();
+                            returnedBookIds.add(bookId);
+                            borrowers.add(borrower);
+                            results.put(copyId, new ScanResult(copyId, ScanResult.Status.CHECKED_IN, bookId, borrower));
+                        } else {
+                            results.put(copyId, new ScanResult(copyId, ScanResult.Status.ALREADY_CHECKED_IN, bookId, null));
+                        }
+                    }
+                }
+                if (!returnedBookIds.isEmpty()) {
+                    release.executeBatch();
+                }
+            }
+            if (!returnedBookIds.isEmpty()) {
+                ChangeLog.recordLoans(conn, CatalogEvent.Type.LOAN_CLOSED, returnedBookIds, borrowers);
+            }
+            conn.commit();
+        }
+
+        for (int i = 0; i < returnedBookIds.size(); i++) {
+            CatalogEventBus.publish(CatalogEvent.loanClosed(returnedBookIds.get(i), borrowers.get(i)));
+            CatalogEventBus.publish(CatalogEvent.availabilityChanged(returnedBookIds.get(i), +1));
+        }
+        for (int copyId : copyIds) {
+            results.putIfAbsent(copyId, new ScanResult(copyId, ScanResult.Status.UNKNOWN_COPY, -1, null));
+        }
+        return results;
+    }
+
+    /**
+     * The ScanStation class is the scan-queue mode of a return desk. Scans are accepted into
+     * a bounded in-memory queue and answered with a future right away, so scanning never
+     * waits for a database round trip. A background worker drains whatever has queued up
+     * while the previous flush ran and checks it in with one transaction.
+     * <p>
+     * A copy scanned again while its first scan is still queued shares the first scan's
+     * future; scanned again later, it is acknowledged as already checked in. When the
+     * database falls so far behind that the queue is full, {@link #scan(int)} waits for room
+     * for a while and then answers BUSY, so the desk knows to slow down.
+     * <p>
+     * Scans are queued under the read side of a lock and the station is closed under the
+     * write side, so once the worker sees the station closed no scan can still be on its way
+     * into the queue. If the worker stops early because it is interrupted, every scan still
+     * queued is answered FAILED rather than left waiting.
+     */
+    public static final class ScanStation implements AutoCloseable {
+
+        private static final int MAX_BATCH_SIZE = 500;
+        private static final int MAX_FLUSH_ATTEMPTS = 3;
+        private static final long FLUSH_RETRY_DELAY_MS = 500;
+        private static final long IDLE_POLL_MS = 100;
+
+        private final CheckInService service;
+        private final BlockingQueue<Integer> queue;
+        private final long offerTimeoutMs;
+        private final Map<Integer, CompletableFuture<ScanResult>> pending = new ConcurrentHashMap<>();
+        private final Thread worker;
+        private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+        private volatile boolean closed;
+
+        private ScanStation(CheckInService service, int capacity, long offerTimeoutMs) {
+            this.service = service;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.offerTimeoutMs = offerTimeoutMs;
+            this.worker = new Thread(this::run, "check-in-station");
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        /**
+         * Accepts a scanned copy for check-in.
+         *
+         * @param copyId The copy ID read from the barcode.
+         * @return A future completed once the scan has been written to the database.
+         * @throws IllegalStateException if the station has been closed.
+         */
+        public CompletableFuture<ScanResult> scan(int copyId) {
+            closeLock.readLock().lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Check-in station is closed");
+                }
+                CompletableFuture<ScanResult> result = new CompletableFuture<>();
+                CompletableFuture<ScanResult> earlier = pending.putIfAbsent(copyId, result);
+                if (earlier != null) {
+                    return earlier; // Still queued, so the repeated scan changes nothing
+                }
+                try {
+                    if (queue.offer(copyId, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return result;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                pending.remove(copyId, result);
+                result.complete(new ScanResult(copyId, ScanResult.Status.BUSY, -1, null));
+                return result;
+            } finally {
+                closeLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns the number of scans waiting to be written.
+         *
+         * @return The number of queued scans.
+         */
+        public int getQueuedScans() {
+            return queue.size();
+        }
+
+        /**
+         * Stops accepting scans, writes the ones still queued and stops the worker.
+         */
+        @Override
+        public void close() {
+            markClosed();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Waits for scans that are being queued right now, then refuses new ones
+        private void markClosed() {
+            closeLock.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+        }
+
+        private void run() {
+            List<Integer> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Integer first;
+                    try {
+                        first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (first == null) {
+                        if (closed) {
+                            break; // Nothing can be queued after closing, so the queue stays empty
+                        }
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    flush(new LinkedHashSet<>(batch));
+                    batch.clear();
+                }
+            } finally {
+                failRemaining();
+            }
+        }
+
+        // Answers whatever is still queued when the worker stops, which only happens early on interrupt
+        private void failRemaining() {
+            markClosed();
+            queue.clear();
+            for (Map.Entry<Integer, CompletableFuture<ScanResult>> entry : pending.entrySet()) {
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().complete(new ScanResult(entry.getKey(), ScanResult.Status.FAILED, -1, null));
+                }
+            }
+        }
+
+        private void flush(Set<Integer> copyIds) {
+            Map<Integer, ScanResult> results = null;
+            for (int attempt = 1; attempt <= MAX_FLUSH_ATTEMPTS && results == null; attempt++) {
+                try {
+                    results = service.checkInCopies(copyIds);
+                } catch (SQLException e) {
+                    System.out.println("Error checking in scanned copies: " + e.getMessage());
+                    try {
+                        Thread.sleep(FLUSH_RETRY_DELAY_MS); // Scans keep queueing meanwhile
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            for (int copyId : copyIds) {
+                CompletableFuture<ScanResult> future = pending.remove(copyId);
+                if (future != null) {
+                    future.complete(results != null
+                            ? results.get(copyId)
+                            : new ScanResult(copyId, ScanResult.Status.FAILED, -1, null));
+                }
+            }
+        }
+    }
 }
@@ -1,4 +1,301 @@
 package com.lms;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The CheckoutService class lends out copies of books. Each checkout claims one specific
+ * copy with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so patrons borrowing the same title
+ * at the same moment each lock a different copy instead of queueing behind the row lock
+ * of the first one. Checkouts of different titles never touch the same rows.
+ * <p>
+ * Titles found to have no copy left are remembered per book for a short while, so a rush
+ * on a sold-out title is answered without a database round trip. The memory is kept in a
+ * ConcurrentHashMap, whose per-bin locking stripes it by book ID, and is cleared as soon
+ * as a copy of the title is returned in this or another client.
+ */
 public class CheckoutService {
+
+    // How long a title found without available copies is answered from memory
+    private static final long SOLD_OUT_TTL_MS = 2_000;
+    // Copies can be locked by claims that are about to roll back, so an empty claim is retried
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+    private static final long CLAIM_RETRY_DELAY_MS = 20;
+
+    private static volatile CheckoutService shared;
+
+    private final Map<Integer, Long> soldOutSince = new ConcurrentHashMap<>();
+
+    /**
+     * The outcome of a checkout.
+     *
+     * @param status What happened.
+     * @param copyId The ID of the copy that was lent out, or -1 if none was.
+     */
+    public record CheckoutResult(Status status, int copyId) {
+
+        /**
+         * CANCELLED means the copy could have been lent, but the basket was rolled back
+         * because another of its items could not be.
+         */
+        public enum Status { BORROWED, NOT_AVAILABLE, CANCELLED, FAILED }
+
+        public boolean isSuccess() {
+            return status == Status.BORROWED;
+        }
+    }
+
+    private CheckoutService() {
+        CatalogEventBus.subscribe(this::onCatalogEvent);
+    }
+
+    /**
+     * Returns the checkout service shared by the whole application.
+     *
+     * @return The shared checkout service.
+     */
+    public static CheckoutService getShared() {
+        CheckoutService service = shared;
+        if (service == null) {
+            synchronized (CheckoutService.class) {
+                service = shared;
+                if (service == null) {
+                    service = new CheckoutService();
+                    shared = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * Lends one available copy of a book to a user.
+     *
+     * @param username The borrowing user.
+     * @param bookId   The ID of the book to borrow.
+     * @return The claimed copy, or why no copy was lent out.
+     */
+    public CheckoutResult checkout(String username, int bookId) {
+        return checkoutAll(username, List.of(bookId), true).get(0);
+    }
+
+    /**
+     * Lends one copy of each book in a basket in a single transaction. The copies of all
+     * books are claimed with one statement and lent with one batch, so the number of round
+     * trips does not grow with the size of the basket.
+     *
+     * @param username     The borrowing user.
+     * @param bookIds      The IDs of the books in the basket; a book listed twice is lent twice.
+     * @param allOrNothing Whether to lend nothing unless every item of the basket can be lent.
+     * @return One result per basket item, in basket order.
+     */
+    public List<CheckoutResult> checkoutAll(String username, List<Integer> bookIds, boolean allOrNothing) {
+        long now = System.currentTimeMillis();
+        Map<Integer, Integer> wanted = new LinkedHashMap<>(); // book ID -> copies to claim
+        Set<Integer> knownSoldOut = new HashSet<>();
+        for (int bookId : bookIds) {
+            Long since = soldOutSince.get(bookId);
+            if (since != null && now - since < SOLD_OUT_TTL_MS) {
+                knownSoldOut.add(bookId);
+            } else {
+                wanted.merge(bookId, 1, Integer::sum);
+            }
+        }
+        if (wanted.isEmpty() || (allOrNothing && !knownSoldOut.isEmpty())) {
+            return results(bookIds, Map.of(), knownSoldOut, false);
+        }
+        ChangeLog.ensureTable();
+
+        try {
+            for (int attempt = 1; ; attempt++) {
+                BasketOutcome outcome = tryCheckoutAll(username, wanted, allOrNothing, attempt == MAX_CLAIM_ATTEMPTS);
+                if (outcome == null) {
+                    Thread.sleep(CLAIM_RETRY_DELAY_MS);
+                    continue;
+                }
+                for (int bookId : outcome.soldOut()) {
+                    soldOutSince.put(bookId, System.currentTimeMillis());
+                }
+                if (outcome.lent()) {
+                    outcome.claimed().forEach((bookId, copyIds) -> {
+                        for (int i = 0; i < copyIds.size(); i++) {
+                            CatalogEventBus.publish(CatalogEvent.loanOpened(bookId, username));
+                            CatalogEventBus.publish(CatalogEvent.availabilityChanged(bookId, -1));
+                        }
+                    });
+                }
+                Set<Integer> unavailable = new HashSet<>(outcome.shortBooks());
+                unavailable.addAll(knownSoldOut);
+                return results(bookIds, outcome.claimed(), unavailable, outcome.lent());
+            }
+        } catch (SQLException e) {
+            System.out.println("Error borrowing books: " + e.getMessage());
+            return Collections.nCopies(bookIds.size(), new CheckoutResult(CheckoutResult.Status.FAILED, -1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.nCopies(bookIds.size(), new CheckoutResult(CheckoutResult.Status.FAILED, -1));
+        }
+    }
+
+    // Claims and lends the basket in one transaction; returns null if it should be retried
+    private BasketOutcome tryCheckoutAll(String username, Map<Integer, Integer> wanted, boolean allOrNothing,
+                                         boolean lastAttempt) throws SQLException {
+        String lendSql = "UPDATE copies SET status = 'borrowed', borrowed_by = ?, borrowed_date = NOW() WHERE copy_id = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Map<Integer, List<Integer>> claimed = claimCopies(conn, wanted);
+
+            Set<Integer> shortBooks = new HashSet<>();
+            for (Map.Entry<Integer, Integer> entry : wanted.entrySet()) {
+                if (claimed.getOrDefault(entry.getKey(), List.of()).size() < entry.getValue()) {
+                    shortBooks.add(entry.getKey());
+                }
+            }
+            Set<Integer> soldOut = new HashSet<>();
+            if (!shortBooks.isEmpty()) {
+                // Available copies we could not claim are locked by claims that may still roll back
+                Map<Integer, Integer> availableCounts = countAvailable(conn, shortBooks);
+                boolean copiesLocked = false;
+                for (int bookId : shortBooks) {
+                    int available = availableCounts.getOrDefault(bookId, 0);
+                    if (available == 0) {
+                        soldOut.add(bookId);
+                    } else if (available > claimed.getOrDefault(bookId, List.of()).size()) {
+                        copiesLocked = true;
+                    }
+                }
+                if (copiesLocked && !lastAttempt) {
+                    conn.rollback();
+                    return null;
+                }
+                if (allOrNothing) {
+                    conn.rollback();
+                    return new BasketOutcome(claimed, shortBooks, soldOut, false);
+                }
+            }
+
+            List<Integer> loanBookIds = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(lendSql)) {
+                for (Map.Entry<Integer, List<Integer>> entry : claimed.entrySet()) {
+                    for (int copyId : entry.getValue()) {
+                        stmt.setString(1, username);
+                        stmt.setInt(2, copyId);
+                        stmt.addBatch();
+                        loanBookIds.add(entry.getKey());
+                    }
+                }
+                if (!loanBookIds.isEmpty()) {
+                    stmt.executeBatch();
+                }
+            }
+            if (!loanBookIds.isEmpty()) {
+                ChangeLog.recordAll(conn, loanBookIds, CatalogEvent.Type.LOAN_OPENED, username);
+            }
+            conn.commit();
+            return new BasketOutcome(claimed, shortBooks, soldOut, true);
+        }
+    }
+
+    // Locks up to the wanted number of available copies per book in one statement
+    private static Map<Integer, List<Integer>> claimCopies(Connection conn, Map<Integer, Integer> wanted) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < wanted.size(); i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("(SELECT copy_id, book_id FROM copies WHERE book_id = ? AND status = 'available' " +
+                    "LIMIT ? FOR UPDATE SKIP LOCKED)");
+        }
+
+        Map<Integer, List<Integer>> claimed = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Map.Entry<Integer, Integer> entry : wanted.entrySet()) {
+                stmt.setInt(index++, entry.getKey());
+                stmt.setInt(index++, entry.getValue());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    claimed.computeIfAbsent(rs.getInt("book_id"), id -> new ArrayList<>()).add(rs.getInt("copy_id"));
+                }
+            }
+        }
+        return claimed;
+    }
+
+    private static Map<Integer, Integer> countAvailable(Connection conn, Set<Integer> bookIds) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT book_id, COUNT(*) AS available FROM copies " +
+                "WHERE status = 'available' AND book_id IN (");
+        for (int i = 0; i < bookIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") GROUP BY book_id");
+
+        Map<Integer, Integer> counts = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int bookId : bookIds) {
+                stmt.setInt(index++, bookId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt("book_id"), rs.getInt("available"));
+                }
+            }
+        }
+        return counts;
+    }
+
+    // Hands out the claimed copies to the basket items in order
+    private static List<CheckoutResult> results(List<Integer> bookIds, Map<Integer, List<Integer>> claimed,
+                                                Set<Integer> unavailable, boolean lent) {
+        Map<Integer, Integer> handedOut = new HashMap<>();
+        List<CheckoutResult> results = new ArrayList<>(bookIds.size());
+        for (int bookId : bookIds) {
+            List<Integer> copyIds = claimed.getOrDefault(bookId, List.of());
+            int next = handedOut.merge(bookId, 1, Integer::sum) - 1;
+            if (next < copyIds.size()) {
+                results.add(lent
+                        ? new CheckoutResult(CheckoutResult.Status.BORROWED, copyIds.get(next))
+                        : new CheckoutResult(CheckoutResult.Status.CANCELLED, -1));
+            } else if (lent || unavailable.contains(bookId)) {
+                results.add(new CheckoutResult(CheckoutResult.Status.NOT_AVAILABLE, -1));
+            } else {
+                results.add(new CheckoutResult(CheckoutResult.Status.CANCELLED, -1));
+            }
+        }
+        return results;
+    }
+
+    private void onCatalogEvent(CatalogEvent event) {
+        switch (event.type()) {
+            case AVAILABILITY_CHANGED -> {
+                if (event.availabilityDelta() > 0) {
+                    soldOutSince.remove(event.bookId());
+                }
+            }
+            case BOOK_ADDED, BOOKS_ADDED -> event.addedBooks().forEach(book -> soldOutSince.remove(book.getId()));
+            case BOOK_DELETED -> soldOutSince.remove(event.bookId());
+            default -> {
+                // Loan events are always accompanied by an availability change
+            }
+        }
+    }
+
+    private record BasketOutcome(Map<Integer, List<Integer>> claimed, Set<Integer> shortBooks,
+                                 Set<Integer> soldOut, boolean lent) {
+    }
 }
@@ -0,0 +1,414 @@
+package com.lms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical MySQL connections open
+ * and hands them out to callers, so that the TCP and authentication handshake is
+ * paid once per connection instead of once per query.
+ * <p>
+ * Connections handed out by the pool are proxies: calling {@code close()} on them
+ * returns the physical connection to the pool instead of closing it. Connections are
+ * validated before reuse, evicted after being idle for too long, retired once they
+ * reach their maximum lifetime, and callers wait at most the acquire timeout for a
+ * free connection.
+ * <p>
+ * A returned connection has any open transaction rolled back, and its auto-commit,
+ * read-only, isolation level and catalog set back to what they were when it was opened,
+ * so one borrower's settings never leak to the next. Session variables set through SQL
+ * are not tracked; a borrower that sets one must restore it.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int validationTimeoutSeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    private final Deque<PooledEntry> idle = new ArrayDeque<>();
+    private int active;
+    private int pending; // physical connections being opened outside the lock
+    private int waiters;
+    private boolean closed;
+
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong acquireNanosTotal = new AtomicLong();
+    private final AtomicLong acquireNanosMax = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a pool for the given database.
+     *
+     * @param url                  The JDBC URL of the database.
+     * @param user                 The database user.
+     * @param password             The database password.
+     * @param maxSize              The maximum number of physical connections.
+     * @param acquireTimeoutMillis How long a caller waits for a free connection.
+     * @param idleTimeoutMillis    How long a connection may stay idle before it is closed.
+     * @param maxLifetimeMillis    How long a physical connection may live in total.
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validationTimeoutSeconds = 2;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new physical connection if the pool
+     * is not yet full. Closing the returned connection hands it back to the pool.
+     *
+     * @return A pooled Connection object.
+     * @throws SQLException if no connection becomes available within the acquire timeout,
+     *                      or if a new physical connection cannot be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+
+        while (true) {
+            PooledEntry candidate = null;
+            boolean openNew = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null) {
+                        active++;
+                        break;
+                    }
+                    if (active + pending < maxSize) {
+                        pending++;
+                        openNew = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLTransientConnectionException(
+                                "Timed out after " + acquireTimeoutMillis + " ms waiting for a database connection");
+                    }
+                    waiters++;
+                    try {
+                        connectionReturned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (openNew) {
+                PooledEntry entry;
+                try {
+                    entry = new PooledEntry(DriverManager.getConnection(url, user, password));
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        pending--;
+                        connectionReturned.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+                lock.lock();
+                try {
+                    pending--;
+                    active++;
+                } finally {
+                    lock.unlock();
+                }
+                recordAcquire(start);
+                return wrap(entry);
+            }
+
+            // Reused connections are validated before they are handed out
+            if (isUsable(candidate)) {
+                recordAcquire(start);
+                return wrap(candidate);
+            }
+            discard(candidate);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the pool's usage statistics.
+     *
+     * @return The current PoolStats.
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            long count = acquireCount.get();
+            double averageMillis = count == 0 ? 0 : acquireNanosTotal.get() / 1_000_000.0 / count;
+            return new PoolStats(active, idle.size(), waiters, maxSize, count, timeoutCount.get(),
+                    averageMillis, acquireNanosMax.get() / 1_000_000.0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes every idle connection and refuses further requests. Connections that are
+     * still borrowed are closed when they are returned.
+     */
+    public void close() {
+        Deque<PooledEntry> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        toClose.forEach(this::closeQuietly);
+    }
+
+    private void recordAcquire(long start) {
+        long elapsed = System.nanoTime() - start;
+        acquireCount.incrementAndGet();
+        acquireNanosTotal.addAndGet(elapsed);
+        acquireNanosMax.accumulateAndGet(elapsed, Math::max);
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        if (entry.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        try {
+            return entry.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Called when a borrower closes its proxy
+    private void release(PooledEntry entry) {
+        boolean keep = !entry.isExpired(System.currentTimeMillis());
+        try {
+            if (keep && !entry.physical.getAutoCommit()) {
+                // Never hand a half-finished transaction to the next borrower
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+            if (keep && entry.settingsChanged) {
+                // Outside any transaction now, so read-only and isolation can be changed
+                entry.physical.setReadOnly(false);
+                entry.physical.setTransactionIsolation(entry.defaultIsolation);
+                if (entry.defaultCatalog != null) {
+                    entry.physical.setCatalog(entry.defaultCatalog);
+                }
+                entry.settingsChanged = false;
+            }
+            keep = keep && !entry.physical.isClosed();
+        } catch (SQLException e) {
+            keep = false;
+        }
+
+        lock.lock();
+        try {
+            active--;
+            if (keep && !closed) {
+                entry.lastUsed = System.currentTimeMillis();
+                idle.addFirst(entry); // Most recently used first, so the tail ages out
+                connectionReturned.signal();
+                return;
+            }
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(entry);
+    }
+
+    // Drops a connection that was taken from the idle list but failed validation
+    private void discard(PooledEntry entry) {
+        lock.lock();
+        try {
+            active--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(entry);
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Deque<PooledEntry> evicted = new ArrayDeque<>();
+        lock.lock();
+        try {
+            Iterator<PooledEntry> iterator = idle.iterator();
+            while (iterator.hasNext()) {
+                PooledEntry entry = iterator.next();
+                if (entry.isExpired(now) || now - entry.lastUsed > idleTimeoutMillis) {
+                    iterator.remove();
+                    evicted.add(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        evicted.forEach(this::closeQuietly);
+    }
+
+    private void closeQuietly(PooledEntry entry) {
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private Connection wrap(PooledEntry entry) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConnectionHandler(entry));
+    }
+
+    /**
+     * A physical connection together with the bookkeeping the pool needs for it.
+     */
+    private final class PooledEntry {
+        private final Connection physical;
+        private final long createdAt;
+        private final int defaultIsolation;
+        private final String defaultCatalog;
+        private long lastUsed;
+        private boolean settingsChanged; // Set by the borrower's proxy, so release only resets when needed
+
+        private PooledEntry(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsed = createdAt;
+            try {
+                this.defaultIsolation = physical.getTransactionIsolation();
+                this.defaultCatalog = physical.getCatalog();
+            } catch (SQLException e) {
+                physical.close();
+                throw e;
+            }
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt > maxLifetimeMillis;
+        }
+    }
+
+    /**
+     * Forwards every call to the physical connection, except {@code close()},
+     * which hands the connection back to the pool exactly once. Calls that change
+     * connection settings are noted, so the pool resets them on return.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean released;
+
+        private ConnectionHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || entry.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.physical + "]";
+                case "setReadOnly":
+                case "setTransactionIsolation":
+                case "setCatalog":
+                    entry.settingsChanged = true;
+                    // Forwarded like any other call
+                default:
+                    if (released) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * A point-in-time view of the pool's usage.
+     *
+     * @param active               Connections currently borrowed.
+     * @param idle                 Connections open and waiting to be borrowed.
+     * @param waiters              Callers currently blocked waiting for a connection.
+     * @param maxSize              The configured maximum number of connections.
+     * @param acquireCount         Total number of successful acquisitions.
+     * @param timeoutCount         Total number of acquisitions that timed out.
+     * @param averageAcquireMillis Mean time taken to acquire a connection.
+     * @param maxAcquireMillis     Longest time taken to acquire a connection.
+     */
+    public record PoolStats(int active, int idle, int waiters, int maxSize, long acquireCount,
+                            long timeoutCount, double averageAcquireMillis, double maxAcquireMillis) {
+    }
+}
@@ -1,4 +1,1049 @@
 package com.lms;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The DataBackupService class takes online backups of the library tables while the library
+ * stays open. All tables are read in one consistent-snapshot transaction, so the backup
+ * reflects a single moment; InnoDB serves those reads from its undo log without taking
+ * locks, so borrowing and returning carry on normally while the backup runs.
+ * <p>
+ * Tables are read in primary key order, one chunk at a time with keyset pagination, and
+ * each row is streamed into compressed, checksummed segment files as it is read, so no
+ * table is ever held in memory. A backup is a directory with one or more segments per
+ * table and a {@code manifest.properties} listing them with their row counts and SHA-256
+ * checksums. The manifest is written last, so a directory without one is an incomplete
+ * backup.
+ * <p>
+ * An incremental backup holds only the books whose rows changed since the previous backup
+ * in its chain, found through the change log, together with all of their copies; its size
+ * follows the amount of change rather than the size of the catalog. The small users and
+ * category tables are copied whole every time. A chain is a full backup followed by the
+ * increments taken after it, all kept as sibling directories of one backup root. A restore
+ * applies a chain in order and can stop at any backup in it, so the catalog can be taken
+ * back to any point in time covered by a backup.
+ * <p>
+ * Each backup ends by pruning the change log: an increment needs the entries after the
+ * newest backup of its chain, and the in-flight entries that backup listed as gaps, so
+ * every older entry is deleted once no chain under the backup root needs it. Chains of one
+ * database should therefore share a backup root; a chain kept elsewhere can only be
+ * continued with a new full backup. An old chain that is no longer extended holds entries
+ * back until its directories are removed.
+ * <p>
+ * A restore loads the segments of the full backup in parallel, each on its own connection,
+ * largest first; since a table is split into segments by key range, large tables are
+ * loaded by several threads at once. Rows are inserted in batches that the driver sends as
+ * multi-row inserts. Secondary indexes are dropped for the load and built once at the end,
+ * which is much cheaper than maintaining them row by row. The loaded row counts are then
+ * checked against the manifest.
+ */
 public class DataBackupService {
+
+    /**
+     * The tables included in a backup, parents before children.
+     */
+    public static final List<String> TABLES = List.of("category", "users", "books", "copies");
+
+    static final String MANIFEST_FILE = "manifest.properties";
+
+    private static final int CHUNK_ROWS = 5_000;
+    private static final long SEGMENT_ROWS = 200_000; // Lets a restore load parts of a table in parallel
+    private static final int ID_CHUNK = 1_000;
+    private static final int RESTORE_BATCH = 1_000;
+    // Each thread holds a pooled connection, and the restore itself holds one more
+    private static final int RESTORE_THREADS = 4;
+    // Change log entries this far below the newest one are no longer expected to commit;
+    // leaves room for several transactions of the largest size in flight at once
+    private static final long MAX_TRACKED_GAP = 10L * ChangeLog.MAX_ENTRIES_PER_TRANSACTION;
+    private static final String CHANGED_BOOKS = "changed_books";
+
+    /**
+     * Progress of a running backup, reported after every chunk.
+     *
+     * @param table         The table being copied.
+     * @param tableRows     Rows of that table copied so far.
+     * @param totalRows     Rows of all tables copied so far.
+     * @param bytesWritten  Compressed bytes written so far.
+     * @param rowsPerSecond Rows copied per second so far.
+     */
+    public record BackupProgress(String table, long tableRows, long totalRows, long bytesWritten, double rowsPerSecond) {
+    }
+
+    /**
+     * Receives progress while a backup runs.
+     */
+    public interface BackupListener {
+        void onProgress(BackupProgress progress);
+    }
+
+    /**
+     * A finished backup.
+     *
+     * @param directory    The directory holding the backup.
+     * @param rows         The number of rows copied.
+     * @param bytes        The compressed size of all segments.
+     * @param changeLogSeq The last change log entry included in the backup.
+     * @param elapsed      How long the backup took.
+     */
+    public record BackupResult(Path directory, long rows, long bytes, long changeLogSeq, Duration elapsed) {
+    }
+
+    /**
+     * Progress of a running restore, reported after every batch.
+     *
+     * @param backup        The name of the backup being applied.
+     * @param table         The table being loaded.
+     * @param rowsRestored  Rows of all backups loaded so far.
+     * @param totalRows     Rows in all backups of the chain.
+     * @param rowsPerSecond Rows loaded per second so far.
+     * @param remaining     The estimated time until all rows are loaded, at the rate so far;
+     *                      building the indexes afterwards is not included.
+     */
+    public record RestoreProgress(String backup, String table, long rowsRestored, long totalRows, double rowsPerSecond,
+                                  Duration remaining) {
+    }
+
+    /**
+     * Receives progress while a restore runs. Progress is reported from the loading threads,
+     * one call at a time.
+     */
+    public interface RestoreListener {
+        void onProgress(RestoreProgress progress);
+    }
+
+    /**
+     * A finished restore.
+     *
+     * @param applied    The backups applied, oldest first; the first is always a full backup.
+     * @param restoredTo When the last applied backup was taken.
+     * @param rows       The number of rows loaded.
+     * @param elapsed    How long the restore took.
+     */
+    public record RestoreResult(List<Path> applied, Instant restoredTo, long rows, Duration elapsed) {
+    }
+
+    /**
+     * Takes a full backup into a new directory.
+     *
+     * @param directory The directory to create; must not exist yet.
+     * @param listener  Receives progress; may be null.
+     * @return The finished backup.
+     * @throws IOException  if the backup files cannot be written.
+     * @throws SQLException if the tables cannot be read.
+     */
+    public BackupResult backup(Path directory, BackupListener listener) throws IOException, SQLException {
+        return takeBackup(directory, null, null, listener);
+    }
+
+    /**
+     * Takes an incremental backup holding the changes since a previous backup.
+     *
+     * @param previous  The last backup of the chain, full or incremental.
+     * @param directory The directory to create; must not exist yet and must be a sibling of
+     *                  {@code previous}, so the chain can be found again.
+     * @param listener  Receives progress; may be null.
+     * @return The finished backup.
+     * @throws IOException  if the previous manifest cannot be read or the backup files cannot be written.
+     * @throws SQLException if the tables cannot be read.
+     */
+    public BackupResult backupIncremental(Path previous, Path directory, BackupListener listener)
+            throws IOException, SQLException {
+        Path parent = previous.toAbsolutePath().normalize();
+        if (!parent.getParent().equals(directory.toAbsolutePath().normalize().getParent())) {
+            throw new IllegalArgumentException("An increment must be stored next to the backup it follows: " + directory);
+        }
+        // The change log is only kept for the newest backup of each chain
+        for (Properties sibling : listBackups(parent.getParent()).values()) {
+            if (parent.getFileName().toString().equals(sibling.getProperty("parent"))) {
+                throw new IllegalArgumentException("An increment must follow the newest backup of its chain: " + previous);
+            }
+        }
+        return takeBackup(directory, parent, readManifest(parent), listener);
+    }
+
+    private BackupResult takeBackup(Path directory, Path previous, Properties previousManifest, BackupListener listener)
+            throws IOException, SQLException {
+        Files.createDirectories(directory.getParent() != null ? directory.getParent() : Path.of("."));
+        Files.createDirectory(directory);
+        ChangeLog.ensureTable(); // DDL, so before the snapshot transaction starts
+        Path backupRoot = directory.toAbsolutePath().normalize().getParent();
+        // Entries below this were deleted by earlier backups, so missing numbers there are not in flight
+        long neededFrom = neededFrom(listBackups(backupRoot));
+        long startNanos = System.nanoTime();
+        Properties manifest = new Properties();
+        Counters counters = new Counters();
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        long changeLogSeq;
+        List<ChangeLog.SeqRange> gaps;
+        try (Connection conn = dbConnection.getConnection()) {
+            // The pool rolls back and resets these settings when the connection is returned
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+            conn.setAutoCommit(false);
+            startSnapshot(conn);
+
+            // Read inside the snapshot, so later increments start exactly where this backup ends
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM catalog_changes")) {
+                rs.next();
+                changeLogSeq = rs.getLong(1);
+            }
+            gaps = findGaps(conn, changeLogSeq, neededFrom == Long.MAX_VALUE ? 0 : neededFrom - 1);
+            List<String> segments = new ArrayList<>();
+            if (previousManifest == null) {
+                for (String table : TABLES) {
+                    backupTable(conn, table, directory, manifest, segments, counters, listener, startNanos);
+                }
+            } else {
+                backupChanges(conn, previousManifest, directory, manifest, segments, counters, listener, startNanos);
+            }
+            manifest.setProperty("segments", String.join(",", segments));
+            conn.commit();
+        }
+
+        manifest.setProperty("format", String.valueOf(BackupFormat.VERSION));
+        manifest.setProperty("type", previous == null ? "full" : "incremental");
+        if (previous != null) {
+            manifest.setProperty("parent", previous.getFileName().toString());
+            manifest.setProperty("base", previousManifest.getProperty("base", previous.getFileName().toString()));
+        }
+        manifest.setProperty("created", Instant.now().toString());
+        manifest.setProperty("changeLogSeq", String.valueOf(changeLogSeq));
+        manifest.setProperty("changeLogGaps", joinRanges(gaps));
+        manifest.setProperty("tables", String.join(",", TABLES));
+        manifest.setProperty("rows", String.valueOf(counters.rows));
+        writeManifest(directory, manifest);
+        try {
+            pruneChangeLog(backupRoot);
+        } catch (IOException | SQLException e) {
+            // The backup itself is complete; the entries are pruned after the next one
+            System.out.println("Error pruning change log: " + e.getMessage());
+        }
+        return new BackupResult(directory, counters.rows, counters.bytes, changeLogSeq,
+                Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Deletes the change log entries that no backup chain under a backup root still needs.
+     * The next increment of a chain reads the entries after its newest backup, and the
+     * entries that backup recorded as still in flight, so everything below the oldest such
+     * entry across all chains is deleted. Runs after every backup; nothing is deleted if the
+     * root holds no finished backup.
+     *
+     * @param backupRoot The directory holding the backups as subdirectories.
+     * @return The number of entries deleted.
+     * @throws IOException  if a manifest cannot be read.
+     * @throws SQLException if the entries cannot be deleted.
+     */
+    public long pruneChangeLog(Path backupRoot) throws IOException, SQLException {
+        long keepFrom = neededFrom(listBackups(backupRoot));
+        return keepFrom == Long.MAX_VALUE ? 0 : ChangeLog.prune(keepFrom - 1);
+    }
+
+    /*
+     * The oldest change log entry still needed by a chain, or Long.MAX_VALUE without backups.
+     * Every entry below it was seen by the newest backup of each chain, so it was committed;
+     * chains only move forward, so this never drops below an earlier pruning point.
+     */
+    private static long neededFrom(Map<Path, Properties> backups) {
+        Set<String> parents = new HashSet<>();
+        for (Properties manifest : backups.values()) {
+            String parent = manifest.getProperty("parent");
+            if (parent != null) {
+                parents.add(parent);
+            }
+        }
+        long keepFrom = Long.MAX_VALUE;
+        for (Map.Entry<Path, Properties> backup : backups.entrySet()) {
+            if (parents.contains(backup.getKey().getFileName().toString())) {
+                continue; // Not the newest backup of its chain
+            }
+            Properties manifest = backup.getValue();
+            keepFrom = Math.min(keepFrom, Long.parseLong(manifest.getProperty("changeLogSeq")) + 1);
+            for (ChangeLog.SeqRange gap : parseRanges(manifest.getProperty("changeLogGaps", ""))) {
+                keepFrom = Math.min(keepFrom, gap.from());
+            }
+        }
+        return keepFrom;
+    }
+
+    // The finished backups directly under a root, with their manifests; unfinished ones are skipped
+    private static Map<Path, Properties> listBackups(Path backupRoot) throws IOException {
+        Map<Path, Properties> backups = new LinkedHashMap<>();
+        try (Stream<Path> children = Files.list(backupRoot)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (Files.isRegularFile(child.resolve(MANIFEST_FILE))) {
+                    backups.put(child, readManifest(child));
+                }
+            }
+        }
+        return backups;
+    }
+
+    // Pins the snapshot now rather than at the first read, and never takes locks
+    private static void startSnapshot(Connection conn) throws SQLException {
+        if (isMySql(conn)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+            }
+        }
+        // Other databases take the snapshot of a repeatable-read transaction at its first read
+    }
+
+    /*
+     * Sequence numbers are handed out when an entry is inserted, but entries become visible
+     * at commit, so a snapshot can see a later entry while an earlier one is still in flight.
+     * The missing numbers near the top are recorded as ranges, and the next increment picks
+     * them up; numbers up to prunedThrough were deleted by pruning rather than missing.
+     */
+    private static List<ChangeLog.SeqRange> findGaps(Connection conn, long changeLogSeq, long prunedThrough)
+            throws SQLException {
+        long from = Math.max(prunedThrough, changeLogSeq - MAX_TRACKED_GAP);
+        List<ChangeLog.SeqRange> gaps = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT seq FROM catalog_changes WHERE seq > ? ORDER BY seq")) {
+            stmt.setLong(1, from);
+            try (ResultSet rs = stmt.executeQuery()) {
+                long expected = from + 1;
+                while (rs.next()) {
+                    long seq = rs.getLong(1);
+                    if (seq > expected) {
+                        gaps.add(new ChangeLog.SeqRange(expected, seq - 1));
+                    }
+                    expected = seq + 1;
+                }
+            }
+        }
+        return gaps;
+    }
+
+    // Copies the small tables whole, then the current rows of every book changed since the previous backup
+    private void backupChanges(Connection conn, Properties previousManifest, Path directory, Properties manifest,
+                               List<String> segments, Counters counters, BackupListener listener, long startNanos)
+            throws IOException, SQLException {
+        backupTable(conn, "category", directory, manifest, segments, counters, listener, startNanos);
+        backupTable(conn, "users", directory, manifest, segments, counters, listener, startNanos);
+
+        long fromSeq = Long.parseLong(previousManifest.getProperty("changeLogSeq"));
+        List<ChangeLog.SeqRange> previousGaps = parseRanges(previousManifest.getProperty("changeLogGaps", ""));
+        String sql = "SELECT DISTINCT book_id FROM catalog_changes WHERE seq > ?"
+                + " OR seq BETWEEN ? AND ?".repeat(previousGaps.size())
+                + " ORDER BY book_id";
+        List<Integer> changedBooks = new ArrayList<>();
+        TableCopy idCopy = null;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, fromSeq);
+            int index = 2;
+            for (ChangeLog.SeqRange gap : previousGaps) {
+                stmt.setLong(index++, gap.from());
+                stmt.setLong(index++, gap.to());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                // The IDs are stored too: a restore removes these books first, which also covers deleted ones
+                idCopy = new TableCopy(CHANGED_BOOKS, BackupFormat.columnsOf(rs.getMetaData()), directory, manifest,
+                        segments, counters, listener, startNanos);
+                while (rs.next()) {
+                    idCopy.writeRow(rs);
+                    changedBooks.add(rs.getInt(1));
+                }
+                idCopy.finish();
+            }
+        } finally {
+            if (idCopy != null) {
+                idCopy.close();
+            }
+        }
+        manifest.setProperty("fromSeq", String.valueOf(fromSeq));
+        manifest.setProperty("table." + CHANGED_BOOKS + ".rows", String.valueOf(changedBooks.size()));
+
+        for (String table : List.of("books", "copies")) {
+            String primaryKey = findPrimaryKey(conn, table);
+            TableCopy copy = new TableCopy(table, columnsOf(conn, table), directory, manifest, segments, counters,
+                    listener, startNanos);
+            try {
+                for (int from = 0; from < changedBooks.size(); from += ID_CHUNK) {
+                    List<Integer> chunk = changedBooks.subList(from, Math.min(from + ID_CHUNK, changedBooks.size()));
+                    String chunkSql = "SELECT * FROM " + table + " WHERE book_id IN (" + placeholders(chunk.size()) + ")"
+                            + (primaryKey != null ? " ORDER BY " + primaryKey : "");
+                    try (PreparedStatement stmt = conn.prepareStatement(chunkSql)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setInt(i + 1, chunk.get(i));
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            copy.copyRows(rs);
+                        }
+                    }
+                }
+                copy.finish();
+            } finally {
+                copy.close();
+            }
+            manifest.setProperty("table." + table + ".rows", String.valueOf(copy.tableRows));
+            if (primaryKey != null) {
+                manifest.setProperty("table." + table + ".primaryKey", primaryKey);
+            }
+        }
+    }
+
+    private void backupTable(Connection conn, String table, Path directory, Properties manifest, List<String> segments,
+                             Counters counters, BackupListener listener, long startNanos) throws IOException, SQLException {
+        String primaryKey = findPrimaryKey(conn, table);
+        List<BackupFormat.Column> columns = columnsOf(conn, table);
+        int keyIndex = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).name().equalsIgnoreCase(primaryKey)) {
+                keyIndex = i + 1;
+            }
+        }
+
+        TableCopy copy = new TableCopy(table, columns, directory, manifest, segments, counters, listener, startNanos);
+        try {
+            if (keyIndex < 0) {
+                // Without a single-column key, stream the whole table in one query
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.setFetchSize(CHUNK_ROWS);
+                    try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table)) {
+                        copy.copyRows(rs);
+                    }
+                }
+            } else {
+                String firstSql = "SELECT * FROM " + table + " ORDER BY " + primaryKey + " LIMIT ?";
+                String nextSql = "SELECT * FROM " + table + " WHERE " + primaryKey + " > ? ORDER BY " + primaryKey + " LIMIT ?";
+                Object lastKey = null;
+                while (true) {
+                    try (PreparedStatement stmt = conn.prepareStatement(lastKey == null ? firstSql : nextSql)) {
+                        if (lastKey == null) {
+                            stmt.setInt(1, CHUNK_ROWS);
+                        } else {
+                            stmt.setObject(1, lastKey);
+                            stmt.setInt(2, CHUNK_ROWS);
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            Object chunkLastKey = copy.copyRows(rs, keyIndex);
+                            if (chunkLastKey == null) {
+                                break;
+                            }
+                            lastKey = chunkLastKey;
+                        }
+                    }
+                }
+            }
+            copy.finish();
+        } finally {
+            copy.close();
+        }
+        manifest.setProperty("table." + table + ".rows", String.valueOf(copy.tableRows));
+        if (primaryKey != null) {
+            manifest.setProperty("table." + table + ".primaryKey", primaryKey);
+        }
+    }
+
+    private static List<BackupFormat.Column> columnsOf(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+            return BackupFormat.columnsOf(rs.getMetaData());
+        }
+    }
+
+    // Returns the table's primary key column, or null unless it has exactly one
+    static String findPrimaryKey(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        List<String> keyColumns = new ArrayList<>();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = metaData.getPrimaryKeys(conn.getCatalog(), null, name)) {
+                while (rs.next()) {
+                    keyColumns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            if (!keyColumns.isEmpty()) {
+                break;
+            }
+        }
+        return keyColumns.size() == 1 ? keyColumns.get(0) : null;
+    }
+
+    /**
+     * Restores the database to the state captured by a backup, applying its full backup and
+     * every increment up to and including it. The existing rows of the backed-up tables are
+     * replaced. Every segment is checked against its checksum before anything is changed.
+     *
+     * @param backup   The backup to restore to, full or incremental.
+     * @param listener Receives progress; may be null.
+     * @return The finished restore.
+     * @throws IOException  if a backup is missing, damaged or unreadable.
+     * @throws SQLException if the rows cannot be loaded.
+     */
+    public RestoreResult restore(Path backup, RestoreListener listener) throws IOException, SQLException {
+        return restore(backup, RESTORE_THREADS, listener);
+    }
+
+    /**
+     * Restores the database to the state captured by a backup, loading the full backup with
+     * the given number of threads. Each thread holds a pooled connection and the restore
+     * holds one more, so at most one thread fewer than the pool's maximum size is used;
+     * more would wait for connections that are never returned.
+     *
+     * @param backup   The backup to restore to, full or incremental.
+     * @param threads  How many segments to load at once, capped at the pool's maximum size minus one.
+     * @param listener Receives progress; may be null.
+     * @return The finished restore.
+     * @throws IOException  if a backup is missing, damaged or unreadable, or the loaded rows
+     *                      do not match it.
+     * @throws SQLException if the rows cannot be loaded.
+     */
+    public RestoreResult restore(Path backup, int threads, RestoreListener listener) throws IOException, SQLException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A restore needs at least one thread: " + threads);
+        }
+        int loadThreads = Math.max(1, Math.min(threads, new DatabaseConnection().getPoolStats().maxSize() - 1));
+        List<Path> chain = new ArrayList<>();
+        List<Properties> manifests = new ArrayList<>();
+        Path current = backup.toAbsolutePath().normalize();
+        while (true) {
+            Properties manifest = readManifest(current);
+            chain.add(0, current);
+            manifests.add(0, manifest);
+            String parent = manifest.getProperty("parent");
+            if (parent == null) {
+                break;
+            }
+            current = current.resolveSibling(parent);
+        }
+        long totalRows = 0;
+        for (int i = 0; i < chain.size(); i++) {
+            verify(chain.get(i), manifests.get(i));
+            totalRows += Long.parseLong(manifests.get(i).getProperty("rows"))
+                    - Long.parseLong(manifests.get(i).getProperty("table." + CHANGED_BOOKS + ".rows", "0"));
+        }
+
+        long startNanos = System.nanoTime();
+        RestoreCounter counter = new RestoreCounter(totalRows, listener, startNanos);
+        DatabaseConnection dbConnection = new DatabaseConnection();
+        try (Connection conn = dbConnection.getConnection()) {
+            setForeignKeyChecks(conn, false); // Rows are loaded table by table, and a child may come first
+            try {
+                for (int i = 0; i < chain.size(); i++) {
+                    counter.backup = chain.get(i).getFileName().toString();
+                    if (i == 0) {
+                        applyFull(conn, chain.get(i), manifests.get(i), loadThreads, counter);
+                    } else {
+                        applyIncrement(conn, chain.get(i), manifests.get(i), counter);
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+                setForeignKeyChecks(conn, true); // A session variable on MySQL, and database-wide elsewhere
+            }
+        }
+        return new RestoreResult(chain, Instant.parse(manifests.get(manifests.size() - 1).getProperty("created")),
+                counter.rows, Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Restores the database to the newest backup under a backup root taken at or before the
+     * given time. Points in time between two backups resolve to the earlier one, so the
+     * precision of a restore is the interval between increments.
+     *
+     * @param backupRoot  The directory holding the backups as subdirectories.
+     * @param pointInTime The moment to go back to.
+     * @param listener    Receives progress; may be null.
+     * @return The finished restore.
+     * @throws IOException  if no backup was taken by that time, or a backup is damaged or unreadable.
+     * @throws SQLException if the rows cannot be loaded.
+     */
+    public RestoreResult restore(Path backupRoot, Instant pointInTime, RestoreListener listener)
+            throws IOException, SQLException {
+        Path best = null;
+        Instant bestCreated = null;
+        for (Map.Entry<Path, Properties> backup : listBackups(backupRoot).entrySet()) {
+            Instant created = Instant.parse(backup.getValue().getProperty("created"));
+            if (!created.isAfter(pointInTime) && (bestCreated == null || created.isAfter(bestCreated))) {
+                best = backup.getKey();
+                bestCreated = created;
+            }
+        }
+        if (best == null) {
+            throw new IOException("No backup in " + backupRoot + " was taken by " + pointInTime);
+        }
+        return restore(best, listener);
+    }
+
+    private static void verify(Path directory, Properties manifest) throws IOException {
+        for (String segment : segmentsOf(manifest)) {
+            String expected = manifest.getProperty("segment." + segment + ".sha256");
+            if (!BackupFormat.checksum(directory.resolve(segment)).equals(expected)) {
+                throw new IOException("Backup segment is damaged: " + directory.resolve(segment));
+            }
+        }
+    }
+
+    private void applyFull(Connection conn, Path directory, Properties manifest, int threads, RestoreCounter counter)
+            throws IOException, SQLException {
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            for (int i = TABLES.size() - 1; i >= 0; i--) {
+                stmt.execute("TRUNCATE TABLE " + TABLES.get(i));
+            }
+        }
+        List<SecondaryIndex> indexes = dropSecondaryIndexes(conn);
+        try {
+            // Largest first, so no thread is left loading a big segment on its own at the end
+            List<String> segments = new ArrayList<>(segmentsOf(manifest));
+            segments.sort(Comparator.comparingLong(
+                    (String segment) -> Long.parseLong(manifest.getProperty("segment." + segment + ".rows"))).reversed());
+            List<Callable<Void>> loads = new ArrayList<>();
+            for (String segment : segments) {
+                loads.add(() -> {
+                    loadSegment(directory.resolve(segment), counter);
+                    return null;
+                });
+            }
+            runAll(loads, threads);
+        } finally {
+            // Tables in parallel, but one index at a time per table, as building one locks the table
+            Map<String, List<SecondaryIndex>> byTable = new LinkedHashMap<>();
+            for (SecondaryIndex index : indexes) {
+                byTable.computeIfAbsent(index.table(), table -> new ArrayList<>()).add(index);
+            }
+            List<Callable<Void>> builds = new ArrayList<>();
+            for (List<SecondaryIndex> tableIndexes : byTable.values()) {
+                builds.add(() -> {
+                    for (SecondaryIndex index : tableIndexes) {
+                        index.create();
+                    }
+                    return null;
+                });
+            }
+            runAll(builds, threads);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    rs.next();
+                    long expected = Long.parseLong(manifest.getProperty("table." + table + ".rows"));
+                    if (rs.getLong(1) != expected) {
+                        throw new IOException("Restored " + rs.getLong(1) + " rows into " + table
+                                + ", but the backup holds " + expected);
+                    }
+                }
+            }
+        }
+        conn.setAutoCommit(false);
+    }
+
+    // Loads one segment on a connection of its own
+    private void loadSegment(Path file, RestoreCounter counter) throws IOException, SQLException {
+        DatabaseConnection dbConnection = new DatabaseConnection();
+        try (Connection conn = dbConnection.getConnection()) {
+            boolean mysql = isMySql(conn); // Elsewhere the restore connection's setting applies to all
+            if (mysql) {
+                setForeignKeyChecks(conn, false);
+            }
+            conn.setAutoCommit(false);
+            try {
+                loadSegment(conn, file, true, counter);
+            } finally {
+                conn.rollback(); // Nothing left after a successful load
+                conn.setAutoCommit(true);
+                if (mysql) {
+                    setForeignKeyChecks(conn, true);
+                }
+            }
+        }
+    }
+
+    // Runs the tasks on a fixed number of threads, and stops the rest at the first failure
+    private static void runAll(List<Callable<Void>> tasks, int threads) throws IOException, SQLException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The restore was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Drops the indexes other than the primary keys, returning what is needed to build them
+     * again. An index that cannot be dropped, such as one a foreign key relies on, is kept.
+     */
+    private static List<SecondaryIndex> dropSecondaryIndexes(Connection conn) throws SQLException {
+        List<SecondaryIndex> indexes = new ArrayList<>();
+        DatabaseMetaData metaData = conn.getMetaData();
+        for (String table : TABLES) {
+            String primaryKey = findPrimaryKey(conn, table);
+            Map<String, SecondaryIndex> found = new LinkedHashMap<>();
+            for (String name : new String[]{table, table.toUpperCase()}) {
+                try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, name, false, false)) {
+                    while (rs.next()) {
+                        String indexName = rs.getString("INDEX_NAME");
+                        if (indexName == null || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                            continue;
+                        }
+                        boolean unique = !rs.getBoolean("NON_UNIQUE");
+                        found.computeIfAbsent(indexName, key -> new SecondaryIndex(table, key, unique, new ArrayList<>()))
+                                .columns().add(rs.getString("COLUMN_NAME"));
+                    }
+                }
+                if (!found.isEmpty()) {
+                    break;
+                }
+            }
+            for (SecondaryIndex index : found.values()) {
+                boolean isPrimary = index.name().equalsIgnoreCase("PRIMARY")
+                        || (index.unique() && index.columns().size() == 1 && index.columns().get(0).equalsIgnoreCase(primaryKey));
+                if (isPrimary) {
+                    continue;
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " DROP INDEX " + index.name());
+                    indexes.add(index);
+                } catch (SQLException e) {
+                    System.out.println("Keeping index " + index.name() + " during the restore: " + e.getMessage());
+                }
+            }
+        }
+        return indexes;
+    }
+
+    // Replaces the small tables, then every changed book together with its copies, in one transaction
+    private void applyIncrement(Connection conn, Path directory, Properties manifest, RestoreCounter counter)
+            throws IOException, SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM users");
+            stmt.executeUpdate("DELETE FROM category");
+        }
+        List<Integer> changedBooks = new ArrayList<>();
+        for (String segment : segmentsOf(manifest, CHANGED_BOOKS)) {
+            try (BackupFormat.SegmentReader reader = new BackupFormat.SegmentReader(directory.resolve(segment))) {
+                Object[] values = new Object[reader.getColumns().size()];
+                while (reader.readRow(values)) {
+                    changedBooks.add(((Number) values[0]).intValue());
+                }
+            }
+        }
+        for (int from = 0; from < changedBooks.size(); from += ID_CHUNK) {
+            List<Integer> chunk = changedBooks.subList(from, Math.min(from + ID_CHUNK, changedBooks.size()));
+            for (String table : List.of("copies", "books")) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM " + table + " WHERE book_id IN (" + placeholders(chunk.size()) + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        for (String table : TABLES) {
+            for (String segment : segmentsOf(manifest, table)) {
+                loadSegment(conn, directory.resolve(segment), false, counter);
+            }
+        }
+        conn.commit();
+    }
+
+    // Inserts a segment's rows in batches, which the driver rewrites into multi-row inserts
+    private void loadSegment(Connection conn, Path file, boolean commit, RestoreCounter counter)
+            throws IOException, SQLException {
+        try (BackupFormat.SegmentReader reader = new BackupFormat.SegmentReader(file)) {
+            List<BackupFormat.Column> columns = reader.getColumns();
+            List<String> names = columns.stream().map(BackupFormat.Column::name).toList();
+            String sql = "INSERT INTO " + reader.getTable() + " (" + String.join(", ", names) + ") VALUES ("
+                    + placeholders(columns.size()) + ")";
+            Object[] values = new Object[columns.size()];
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int batched = 0;
+                while (reader.readRow(values)) {
+                    for (int i = 0; i < values.length; i++) {
+                        stmt.setObject(i + 1, values[i]);
+                    }
+                    stmt.addBatch();
+                    if (++batched == RESTORE_BATCH) {
+                        stmt.executeBatch();
+                        counter.add(reader.getTable(), batched);
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    stmt.executeBatch();
+                    counter.add(reader.getTable(), batched);
+                }
+            }
+        }
+        if (commit) {
+            conn.commit();
+        }
+    }
+
+    // On MySQL this applies to the session, elsewhere to the whole database
+    private static void setForeignKeyChecks(Connection conn, boolean enabled) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (isMySql(conn)) {
+                stmt.execute("SET FOREIGN_KEY_CHECKS = " + (enabled ? 1 : 0));
+                stmt.execute("SET UNIQUE_CHECKS = " + (enabled ? 1 : 0));
+            } else {
+                stmt.execute("SET REFERENTIAL_INTEGRITY " + (enabled ? "TRUE" : "FALSE"));
+            }
+        }
+    }
+
+    private static boolean isMySql(Connection conn) throws SQLException {
+        return "MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+    }
+
+    static Properties readManifest(Path directory) throws IOException {
+        Path file = directory.resolve(MANIFEST_FILE);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Not a finished backup: " + directory);
+        }
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            manifest.load(reader);
+        }
+        return manifest;
+    }
+
+    private static List<String> segmentsOf(Properties manifest) {
+        String segments = manifest.getProperty("segments", "");
+        return segments.isEmpty() ? List.of() : List.of(segments.split(","));
+    }
+
+    private static List<String> segmentsOf(Properties manifest, String table) {
+        return segmentsOf(manifest).stream()
+                .filter(segment -> table.equals(manifest.getProperty("segment." + segment + ".table")))
+                .toList();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    // Ranges are written as first-last, single numbers as they are
+    private static String joinRanges(List<ChangeLog.SeqRange> ranges) {
+        return ranges.stream()
+                .map(range -> range.from() == range.to() ? String.valueOf(range.from()) : range.from() + "-" + range.to())
+                .collect(Collectors.joining(","));
+    }
+
+    private static List<ChangeLog.SeqRange> parseRanges(String values) {
+        if (values.isEmpty()) {
+            return List.of();
+        }
+        List<ChangeLog.SeqRange> ranges = new ArrayList<>();
+        for (String value : values.split(",")) {
+            int dash = value.indexOf('-');
+            ranges.add(dash < 0
+                    ? new ChangeLog.SeqRange(Long.parseLong(value), Long.parseLong(value))
+                    : new ChangeLog.SeqRange(Long.parseLong(value.substring(0, dash)), Long.parseLong(value.substring(dash + 1))));
+        }
+        return ranges;
+    }
+
+    static void writeManifest(Path directory, Properties manifest) throws IOException {
+        Path temporary = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            manifest.store(writer, "Library backup");
+        }
+        Files.move(temporary, directory.resolve(MANIFEST_FILE), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Counters {
+        long rows;
+        long bytes;
+    }
+
+    // Shared by the loading threads
+    private static final class RestoreCounter {
+        private final long totalRows;
+        private final RestoreListener listener;
+        private final long startNanos;
+        volatile String backup;
+        long rows;
+
+        RestoreCounter(long totalRows, RestoreListener listener, long startNanos) {
+            this.totalRows = totalRows;
+            this.listener = listener;
+            this.startNanos = startNanos;
+        }
+
+        synchronized void add(String table, int batchRows) {
+            rows += batchRows;
+            if (listener != null) {
+                double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+                double rowsPerSecond = rows / seconds;
+                Duration remaining = Duration.ofMillis((long) (Math.max(0, totalRows - rows) / rowsPerSecond * 1000));
+                listener.onProgress(new RestoreProgress(backup, table, rows, totalRows, rowsPerSecond, remaining));
+            }
+        }
+    }
+
+    /**
+     * An index dropped for a restore, and how to build it again.
+     */
+    private record SecondaryIndex(String table, String name, boolean unique, List<String> columns) {
+
+        void create() throws SQLException {
+            DatabaseConnection dbConnection = new DatabaseConnection();
+            try (Connection conn = dbConnection.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table
+                        + " (" + String.join(", ", columns) + ")");
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of one table into as many segments as needed.
+     */
+    private static final class TableCopy {
+
+        private final String table;
+        private final List<BackupFormat.Column> columns;
+        private final Path directory;
+        private final Properties manifest;
+        private final List<String> segments;
+        private final Counters counters;
+        private final BackupListener listener;
+        private final long startNanos;
+        private BackupFormat.SegmentWriter writer;
+        private int segmentNumber;
+        private long tableRows;
+
+        TableCopy(String table, List<BackupFormat.Column> columns, Path directory, Properties manifest,
+                  List<String> segments, Counters counters, BackupListener listener, long startNanos) {
+            this.table = table;
+            this.columns = columns;
+            this.directory = directory;
+            this.manifest = manifest;
+            this.segments = segments;
+            this.counters = counters;
+            this.listener = listener;
+            this.startNanos = startNanos;
+        }
+
+        void copyRows(ResultSet rs) throws IOException, SQLException {
+            while (rs.next()) {
+                writeRow(rs);
+                if (tableRows % CHUNK_ROWS == 0) {
+                    reportProgress();
+                }
+            }
+        }
+
+        // Copies one chunk and returns its last key, or null if the chunk was empty
+        Object copyRows(ResultSet rs, int keyIndex) throws IOException, SQLException {
+            Object lastKey = null;
+            while (rs.next()) {
+                writeRow(rs);
+                lastKey = rs.getObject(keyIndex);
+            }
+            if (lastKey != null) {
+                reportProgress();
+            }
+            return lastKey;
+        }
+
+        void writeRow(ResultSet rs) throws IOException, SQLException {
+            if (writer == null || writer.getRows() >= SEGMENT_ROWS) {
+                finishSegment();
+                String name = String.format("%s-%05d.seg.gz", table, segmentNumber++);
+                writer = new BackupFormat.SegmentWriter(directory.resolve(name), table, columns);
+            }
+            writer.writeRow(rs);
+            tableRows++;
+            counters.rows++;
+        }
+
+        void finish() throws IOException {
+            if (writer == null) {
+                // An empty table still gets a segment, so a restore knows its columns
+                writer = new BackupFormat.SegmentWriter(
+                        directory.resolve(String.format("%s-%05d.seg.gz", table, segmentNumber++)), table, columns);
+            }
+            finishSegment();
+            reportProgress();
+        }
+
+        private void finishSegment() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            String name = String.format("%s-%05d.seg.gz", table, segmentNumber - 1);
+            long rows = writer.getRows();
+            String sha256 = writer.finish();
+            long bytes = Files.size(directory.resolve(name));
+            segments.add(name);
+            manifest.setProperty("segment." + name + ".table", table);
+            manifest.setProperty("segment." + name + ".rows", String.valueOf(rows));
+            manifest.setProperty("segment." + name + ".sha256", sha256);
+            counters.bytes += bytes;
+            writer = null;
+        }
+
+        private void reportProgress() throws IOException {
+            if (listener == null) {
+                return;
+            }
+            long bytes = counters.bytes + (writer != null ? writer.getBytesWritten() : 0);
+            double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+            listener.onProgress(new BackupProgress(table, tableRows, counters.rows, bytes, counters.rows / seconds));
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
 }
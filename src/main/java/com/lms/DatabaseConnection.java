@@ -5,13 +5,31 @@ import java.sql.*;
 /**
  * The DatabaseConnection class is responsible for establishing a connection to the MySQL database.
  * It provides methods to test the connection, retrieve a database connection, and authenticate users.
+ * Connections are served from a shared {@link ConnectionPool}, so closing them returns them to the pool.
  */
 public class DatabaseConnection {
 
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/library?useSSL=false&serverTimezone=UTC";
+    // rewriteBatchedStatements turns JDBC insert batches into multi-row INSERT statements;
+    // useServerPrepStmts and cachePrepStmts prepare each statement on the server once per connection
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/library?useSSL=false&serverTimezone=UTC"
+            + "&rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true"
+            + "&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048";
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = "KaiHavertz29#"; // Update this based on your actual DB credentials
 
+    // Tools such as the load simulator point the application at another database with these
+    public static final String URL_PROPERTY = "lms.db.url";
+    public static final String USER_PROPERTY = "lms.db.user";
+    public static final String PASSWORD_PROPERTY = "lms.db.password";
+    public static final String POOL_SIZE_PROPERTY = "lms.db.poolSize";
+
+    private static final int POOL_MAX_SIZE = 10;
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = 5_000;
+    private static final long POOL_IDLE_TIMEOUT_MS = 5 * 60_000;
+    private static final long POOL_MAX_LIFETIME_MS = 30 * 60_000; // Stay below MySQL's wait_timeout
+
+    private static volatile ConnectionPool pool;
+
     /**
      * Tests the connection to the database by attempting to establish a connection.
      */
@@ -30,37 +48,54 @@ public class DatabaseConnection {
     }
 
     /**
-     * Retrieves a connection to the database.
+     * Retrieves a connection to the database from the shared connection pool.
+     * Closing the connection returns it to the pool.
      *
      * @return A Connection object to interact with the database.
-     * @throws SQLException if a database access error occurs.
+     * @throws SQLException if a database access error occurs or no connection is available in time.
      */
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); // Return the connection object
+        return getPool().getConnection(); // Return a pooled connection object
+    }
+
+    /**
+     * Returns the usage statistics of the shared connection pool.
+     *
+     * @return The current pool statistics.
+     */
+    public ConnectionPool.PoolStats getPoolStats() {
+        return getPool().getStats();
+    }
+
+    private static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConnection.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool(
+                            System.getProperty(URL_PROPERTY, DB_URL),
+                            System.getProperty(USER_PROPERTY, DB_USER),
+                            System.getProperty(PASSWORD_PROPERTY, DB_PASSWORD),
+                            Integer.getInteger(POOL_SIZE_PROPERTY, POOL_MAX_SIZE),
+                            POOL_ACQUIRE_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_MAX_LIFETIME_MS);
+                    pool = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
      * Authenticates the user by checking the provided username and password with the database.
+     * Recently read credentials are answered from {@link UserManager}'s cache.
      *
      * @param username The username entered by the user.
      * @param password The password entered by the user.
      * @return true if the username and password match, false otherwise.
      */
     public boolean authenticateUser(String username, String password) {
-        String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
-
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next(); // If a record is found, authentication is successful
-            }
-        } catch (SQLException e) {
-            System.out.println("Error fetching user data: " + e.getMessage());
-            return false;
-        }
+        return UserManager.getShared().checkPassword(username, password);
     }
 
     /**
@@ -70,23 +105,10 @@ public class DatabaseConnection {
      * @return The category ID, or -1 if the category does not exist.
      */
     public int getCategoryId(String categoryName) {
-        String sql = "SELECT category_id FROM category WHERE name = ?"; // Ensure this matches your database schema
-
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, categoryName); // Set the category name parameter
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("category_id"); // Return the category ID
-                } else {
-                    System.out.println("Category not found.");
-                    return -1; // Return -1 if the category doesn't exist
-                }
-            }
-        } catch (SQLException e) {
-            System.out.println("Error fetching category ID: " + e.getMessage());
-            return -1; // Return -1 if there was an error
+        int categoryId = CategoryRegistry.getShared().idOf(categoryName);
+        if (categoryId == -1) {
+            System.out.println("Category not found.");
         }
+        return categoryId;
     }
 }
@@ -0,0 +1,19 @@
+package com.lms;
+
+import java.util.Map;
+
+/**
+ * The live counts shown next to each facet for a {@link FacetFilter}. The counts of a
+ * facet apply the selections of the other facets but not its own, so a patron sees how
+ * many books each alternative would give.
+ *
+ * @param matches     The number of books matching the whole filter.
+ * @param categories  The number of books per category ID, for categories with any.
+ * @param authors     The number of books per author, most books first, limited to the
+ *                    authors asked for.
+ * @param available   The number of books with an available copy.
+ * @param unavailable The number of books without one.
+ */
+public record FacetCounts(int matches, Map<Integer, Integer> categories, Map<String, Integer> authors,
+                          int available, int unavailable) {
+}
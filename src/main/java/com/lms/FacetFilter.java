@@ -0,0 +1,33 @@
+package com.lms;
+
+/**
+ * The facet values a patron has selected to narrow the catalog, for example
+ * "Science Fiction, available now, by author X". A facet left unset does not narrow.
+ *
+ * @param categoryId    The category ID to keep, or null for any category.
+ * @param author        The author to keep, compared ignoring case, or null for any author.
+ * @param availableOnly Whether to keep only books with an available copy.
+ */
+public record FacetFilter(Integer categoryId, String author, boolean availableOnly) {
+
+    /**
+     * Returns a filter that keeps every book.
+     *
+     * @return The filter.
+     */
+    public static FacetFilter none() {
+        return new FacetFilter(null, null, false);
+    }
+
+    public FacetFilter withCategory(Integer categoryId) {
+        return new FacetFilter(categoryId, author, availableOnly);
+    }
+
+    public FacetFilter withAuthor(String author) {
+        return new FacetFilter(categoryId, author, availableOnly);
+    }
+
+    public FacetFilter withAvailableOnly(boolean availableOnly) {
+        return new FacetFilter(categoryId, author, availableOnly);
+    }
+}
@@ -0,0 +1,201 @@
+package com.lms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * The FacetIndex class keeps a compressed bitmap of catalog ordinals for every category,
+ * every author and for the books that have an available copy. Narrowing the catalog by
+ * facets intersects bitmaps, and the count next to each facet value is the size of an
+ * intersection, so neither scans the books nor queries the database. Bitmaps are updated
+ * in place as books are added or removed and as copies are borrowed and returned.
+ * <p>
+ * Authors are grouped ignoring case and shown as first seen. This class is not
+ * thread-safe; {@link Catalog} guards it with its own lock.
+ */
+class FacetIndex {
+
+    private final OrdinalBitmap live = new OrdinalBitmap();
+    private final OrdinalBitmap available = new OrdinalBitmap();
+    private final Map<Integer, OrdinalBitmap> byCategory = new TreeMap<>();
+    private final Map<String, Integer> authorIds = new HashMap<>(); // By normalized author
+    private final List<String> authorNames = new ArrayList<>();
+    private final List<OrdinalBitmap> byAuthor = new ArrayList<>();
+    private int[] categoryByOrdinal = new int[1024];
+    private int[] authorByOrdinal = new int[1024];
+    private int[] availableCopies = new int[1024];
+
+    /**
+     * Adds a book under its catalog ordinal.
+     */
+    void add(int ordinal, int categoryId, String author, int copiesAvailable) {
+        ensureCapacity(ordinal);
+        live.add(ordinal);
+        byCategory.computeIfAbsent(categoryId, id -> new OrdinalBitmap()).add(ordinal);
+        categoryByOrdinal[ordinal] = categoryId;
+
+        String key = Catalog.normalize(author);
+        Integer authorId = authorIds.get(key);
+        if (authorId == null) {
+            authorId = authorNames.size();
+            authorIds.put(key, authorId);
+            authorNames.add(author == null ? "" : author);
+            byAuthor.add(new OrdinalBitmap());
+        }
+        byAuthor.get(authorId).add(ordinal);
+        authorByOrdinal[ordinal] = authorId;
+
+        setAvailableCopies(ordinal, copiesAvailable);
+    }
+
+    /**
+     * Removes the book under a catalog ordinal.
+     */
+    void remove(int ordinal) {
+        live.remove(ordinal);
+        available.remove(ordinal);
+        byCategory.get(categoryByOrdinal[ordinal]).remove(ordinal);
+        byAuthor.get(authorByOrdinal[ordinal]).remove(ordinal);
+        availableCopies[ordinal] = 0;
+    }
+
+    int getAvailableCopies(int ordinal) {
+        return availableCopies[ordinal];
+    }
+
+    void setAvailableCopies(int ordinal, int copies) {
+        availableCopies[ordinal] = Math.max(0, copies);
+        if (availableCopies[ordinal] > 0) {
+            available.add(ordinal);
+        } else {
+            available.remove(ordinal);
+        }
+    }
+
+    /**
+     * Returns the ordinals of the books matching a filter, ascending.
+     */
+    OrdinalBitmap matching(FacetFilter filter) {
+        return intersect(categorySet(filter), authorSet(filter), availableSet(filter));
+    }
+
+    /**
+     * Counts the books per facet value for a filter. Each facet is counted with the
+     * selections of the other facets applied.
+     */
+    FacetCounts count(FacetFilter filter, int authorLimit) {
+        OrdinalBitmap categorySet = categorySet(filter);
+        OrdinalBitmap authorSet = authorSet(filter);
+        OrdinalBitmap availableSet = availableSet(filter);
+
+        OrdinalBitmap categoryContext = intersect(null, authorSet, availableSet);
+        Map<Integer, Integer> categories = new LinkedHashMap<>();
+        for (Map.Entry<Integer, OrdinalBitmap> category : byCategory.entrySet()) {
+            int count = categoryContext == live
+                    ? category.getValue().cardinality()
+                    : category.getValue().andCardinality(categoryContext);
+            if (count > 0) {
+                categories.put(category.getKey(), count);
+            }
+        }
+
+        Map<String, Integer> authors = countAuthors(intersect(categorySet, null, availableSet), authorLimit);
+
+        OrdinalBitmap availabilityContext = intersect(categorySet, authorSet, null);
+        int availableCount = availabilityContext == live
+                ? available.cardinality()
+                : available.andCardinality(availabilityContext);
+        int unavailableCount = availabilityContext.cardinality() - availableCount;
+
+        int matches = filter.availableOnly() ? availableCount : availabilityContext.cardinality();
+        return new FacetCounts(matches, categories, authors, availableCount, unavailableCount);
+    }
+
+    private Map<String, Integer> countAuthors(OrdinalBitmap context, int limit) {
+        int[] counts = new int[authorNames.size()];
+        if (context == live || context.cardinality() > authorNames.size()) {
+            // Many books: one intersection count per author
+            for (int authorId = 0; authorId < counts.length; authorId++) {
+                counts[authorId] = context == live
+                        ? byAuthor.get(authorId).cardinality()
+                        : byAuthor.get(authorId).andCardinality(context);
+            }
+        } else {
+            // Few books: tally the author of each
+            context.forEach(ordinal -> {
+                counts[authorByOrdinal[ordinal]]++;
+                return true;
+            });
+        }
+
+        // The head is the weakest of the best authors found so far
+        Comparator<Integer> byCount = Comparator.<Integer>comparingInt(id -> counts[id])
+                .thenComparing(id -> authorNames.get(id), Comparator.reverseOrder());
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, limit), byCount);
+        for (int authorId = 0; authorId < counts.length && limit > 0; authorId++) {
+            if (counts[authorId] == 0) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(authorId);
+            } else if (byCount.compare(authorId, best.peek()) > 0) {
+                best.poll();
+                best.add(authorId);
+            }
+        }
+        List<Integer> ranked = new ArrayList<>(best);
+        ranked.sort(byCount.reversed());
+        Map<String, Integer> authors = new LinkedHashMap<>();
+        for (int authorId : ranked) {
+            authors.put(authorNames.get(authorId), counts[authorId]);
+        }
+        return authors;
+    }
+
+    // Every facet bitmap only holds live books, so the live set is only needed without any
+    private OrdinalBitmap intersect(OrdinalBitmap first, OrdinalBitmap second, OrdinalBitmap third) {
+        OrdinalBitmap result = null;
+        for (OrdinalBitmap set : new OrdinalBitmap[] {first, second, third}) {
+            if (set != null) {
+                result = result == null ? set : result.and(set);
+            }
+        }
+        return result == null ? live : result;
+    }
+
+    private OrdinalBitmap categorySet(FacetFilter filter) {
+        if (filter.categoryId() == null) {
+            return null;
+        }
+        OrdinalBitmap set = byCategory.get(filter.categoryId());
+        return set != null ? set : new OrdinalBitmap();
+    }
+
+    private OrdinalBitmap authorSet(FacetFilter filter) {
+        if (filter.author() == null) {
+            return null;
+        }
+        Integer authorId = authorIds.get(Catalog.normalize(filter.author()));
+        return authorId != null ? byAuthor.get(authorId) : new OrdinalBitmap();
+    }
+
+    private OrdinalBitmap availableSet(FacetFilter filter) {
+        return filter.availableOnly() ? available : null;
+    }
+
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= categoryByOrdinal.length) {
+            int capacity = Math.max(ordinal + 1, categoryByOrdinal.length * 2);
+            categoryByOrdinal = Arrays.copyOf(categoryByOrdinal, capacity);
+            authorByOrdinal = Arrays.copyOf(authorByOrdinal, capacity);
+            availableCopies = Arrays.copyOf(availableCopies, capacity);
+        }
+    }
+}
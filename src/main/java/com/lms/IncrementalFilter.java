@@ -0,0 +1,111 @@
+package com.lms;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The IncrementalFilter class matches a list of books against a search box query by title
+ * or author, ignoring case. Titles and authors are normalized once when a book is added,
+ * so filtering does not allocate a string per book. When a query extends the previous
+ * one, only the previous matches are checked again.
+ * <p>
+ * Filtering is synchronized, so it can run on a background thread while the JavaFX
+ * Application Thread evaluates earlier results. Books must be added and removed on the
+ * thread that evaluates the returned predicates.
+ */
+public class IncrementalFilter {
+
+    private final List<String> searchKeys = new ArrayList<>(); // null once a book is removed
+    private final Map<Book, Integer> positions = new IdentityHashMap<>();
+    private String lastQuery = "";
+    private BitSet lastMatches = new BitSet();
+
+    /**
+     * Creates a filter over the given books and precomputes their search keys.
+     *
+     * @param books The books to filter.
+     */
+    public IncrementalFilter(List<Book> books) {
+        for (Book book : books) {
+            add(book);
+        }
+    }
+
+    /**
+     * Returns the number of books the filter covers.
+     *
+     * @return The number of books.
+     */
+    public synchronized int size() {
+        return positions.size();
+    }
+
+    /**
+     * Adds a book and matches it against the current query, so predicates already handed
+     * out accept it if it matches.
+     *
+     * @param book The book to add.
+     */
+    public synchronized void add(Book book) {
+        int position = searchKeys.size();
+        // The separator never occurs in a query, so a match cannot span both fields
+        String key = Catalog.normalize(book.getTitle()) + '\u0000' + Catalog.normalize(book.getAuthor());
+        searchKeys.add(key);
+        positions.put(book, position);
+        if (key.contains(lastQuery)) {
+            lastMatches.set(position);
+        }
+    }
+
+    /**
+     * Removes a book from the filter.
+     *
+     * @param book The book to remove.
+     */
+    public synchronized void remove(Book book) {
+        Integer position = positions.remove(book);
+        if (position != null) {
+            searchKeys.set(position, null);
+            lastMatches.clear(position);
+        }
+    }
+
+    /**
+     * Computes the books matching a query.
+     *
+     * @param query The text typed in the search box, may be null or empty.
+     * @return A predicate that accepts exactly the matching books.
+     */
+    public synchronized Predicate<Book> apply(String query) {
+        String term = Catalog.normalize(query);
+        BitSet matches;
+        if (term.contains(lastQuery)) {
+            // Anything matching the longer query also matched the previous one
+            matches = (BitSet) lastMatches.clone();
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                if (!searchKeys.get(i).contains(term)) {
+                    matches.clear(i);
+                }
+            }
+        } else {
+            matches = new BitSet(searchKeys.size());
+            for (int i = 0; i < searchKeys.size(); i++) {
+                String key = searchKeys.get(i);
+                if (key != null && key.contains(term)) {
+                    matches.set(i);
+                }
+            }
+        }
+        lastQuery = term;
+        lastMatches = matches;
+
+        return book -> {
+            Integer position = positions.get(book);
+            return position != null && matches.get(position);
+        };
+    }
+}
@@ -1,4 +1,418 @@
 package com.lms;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The InventoryManager class imports whole collections into the catalog from CSV or TSV
+ * files. The file is streamed in chunks rather than read into memory. Each chunk is
+ * validated and normalized in parallel while the previous one is written. Each chunk is
+ * written in one transaction with batched inserts: the {@code books} rows first, then the
+ * matching {@code copies} rows for the generated book IDs.
+ * <p>
+ * The last imported line of each file is stored in {@code import_checkpoints} inside the
+ * same transaction as the chunk, so an import that fails part-way resumes after the last
+ * committed chunk when it is started again, without duplicating rows.
+ * <p>
+ * The file must start with a header naming the columns {@code title}, {@code author},
+ * {@code isbn}, {@code category} and {@code copies}, in any order. The category may be given
+ * by ID or by name. Each record must fit on one line.
+ */
 public class InventoryManager {
+
+    private static final int CHUNK_SIZE = ChangeLog.MAX_ENTRIES_PER_TRANSACTION; // One change log entry per line
+    private static final int MAX_COPIES_PER_TITLE = 1_000;
+    private static final String[] REQUIRED_COLUMNS = {"title", "author", "isbn", "category", "copies"};
+
+    private static volatile boolean checkpointTableReady;
+
+    /**
+     * Progress of an import, reported after every committed chunk.
+     *
+     * @param linesRead     Data lines read so far, including skipped and rejected ones.
+     * @param imported      Books inserted so far in this run.
+     * @param rejected      Lines rejected so far in this run.
+     * @param rowsPerSecond Lines processed per second in this run.
+     */
+    public record ImportProgress(long linesRead, long imported, long rejected, double rowsPerSecond) {
+    }
+
+    /**
+     * A line that could not be imported.
+     *
+     * @param lineNumber The line number in the file, starting at 1 for the header.
+     * @param line       The raw line.
+     * @param reason     Why the line was rejected.
+     */
+    public record Reject(long lineNumber, String line, String reason) {
+    }
+
+    /**
+     * Receives progress and rejected lines while an import runs.
+     */
+    public interface ImportListener {
+        void onProgress(ImportProgress progress);
+
+        void onReject(Reject reject);
+    }
+
+    /**
+     * Imports a CSV or TSV file into the catalog, resuming after the last committed chunk
+     * if the same file was imported partially before.
+     *
+     * @param file     The file to import.
+     * @param listener Receives progress and rejects; may be null.
+     * @return The final progress of this run.
+     * @throws IOException  if the file cannot be read or has no usable header.
+     * @throws SQLException if a chunk cannot be written; earlier chunks stay committed.
+     */
+    public ImportProgress importCatalog(Path file, ImportListener listener) throws IOException, SQLException {
+        String source = file.toAbsolutePath().normalize().toString();
+        ensureCheckpointTable();
+        ChangeLog.ensureTable();
+        long resumeAfter = readCheckpoint(source);
+        Map<String, Integer> categoryIds = loadCategoryIds();
+
+        long startNanos = System.nanoTime();
+        long linesRead = 0;
+        long imported = 0;
+        long rejected = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Import file is empty: " + file);
+            }
+            char delimiter = header.indexOf('\t') >= 0 ? '\t' : ',';
+            int[] columns = mapColumns(splitLine(header, delimiter));
+
+            long lineNumber = 1;
+            CompletableFuture<List<ParsedLine>> pending = null;
+            List<RawLine> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                    linesRead++;
+                    if (lineNumber <= resumeAfter || line.isBlank()) {
+                        continue; // Already committed by an earlier run, or nothing to import
+                    }
+                    chunk.add(new RawLine(lineNumber, line));
+                    if (chunk.size() < CHUNK_SIZE) {
+                        continue;
+                    }
+                }
+
+                // Parse this chunk in parallel while the previous one is being written
+                CompletableFuture<List<ParsedLine>> parsing = null;
+                if (!chunk.isEmpty()) {
+                    List<RawLine> toParse = chunk;
+                    parsing = CompletableFuture.supplyAsync(() -> toParse.parallelStream()
+                            .map(raw -> parse(raw, columns, delimiter, categoryIds))
+                            .toList());
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+                if (pending != null) {
+                    List<ParsedLine> parsed = pending.join();
+                    ChunkResult result = writeChunk(source, parsed);
+                    imported += result.imported();
+                    rejected += result.rejected().size();
+                    if (listener != null) {
+                        result.rejected().forEach(listener::onReject);
+                        listener.onProgress(progress(linesRead, imported, rejected, startNanos));
+                    }
+                }
+                pending = parsing;
+                if (line == null && pending == null) {
+                    break;
+                }
+            }
+        }
+        clearCheckpoint(source);
+        ImportProgress finished = progress(linesRead, imported, rejected, startNanos);
+        if (listener != null) {
+            listener.onProgress(finished);
+        }
+        return finished;
+    }
+
+    private static ImportProgress progress(long linesRead, long imported, long rejected, long startNanos) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        return new ImportProgress(linesRead, imported, rejected, (imported + rejected) / seconds);
+    }
+
+    private ChunkResult writeChunk(String source, List<ParsedLine> parsed) throws SQLException {
+        List<ParsedLine> valid = new ArrayList<>(parsed.size());
+        List<Reject> rejected = new ArrayList<>();
+        for (ParsedLine line : parsed) {
+            if (line.reject() != null) {
+                rejected.add(line.reject());
+            } else {
+                valid.add(line);
+            }
+        }
+        long lastLine = parsed.get(parsed.size() - 1).lineNumber();
+
+        String bookSql = "INSERT INTO books (title, author, isbn, category_id, total_copies) VALUES (?, ?, ?, ?, ?)";
+        String copySql = "INSERT INTO copies (book_id, status) VALUES (?, 'available')";
+        String checkpointSql = "INSERT INTO import_checkpoints (source, last_line) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE last_line = VALUES(last_line)";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement bookStmt = conn.prepareStatement(bookSql, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement copyStmt = conn.prepareStatement(copySql);
+             PreparedStatement checkpointStmt = conn.prepareStatement(checkpointSql)) {
+            conn.setAutoCommit(false);
+
+            // With rewriteBatchedStatements the driver sends these as multi-row INSERTs
+            for (ParsedLine line : valid) {
+                Book book = line.book();
+                bookStmt.setString(1, book.getTitle());
+                bookStmt.setString(2, book.getAuthor());
+                bookStmt.setString(3, book.getIsbn());
+                bookStmt.setInt(4, book.getCategoryId());
+                bookStmt.setInt(5, book.getTotalCopies());
+                bookStmt.addBatch();
+            }
+            List<Integer> bookIds = new ArrayList<>(valid.size());
+            if (!valid.isEmpty()) {
+                bookStmt.executeBatch();
+                try (ResultSet keys = bookStmt.getGeneratedKeys()) {
+                    for (ParsedLine line : valid) {
+                        if (!keys.next()) {
+                            throw new SQLException("Missing generated key for line " + line.lineNumber());
+                        }
+                        line.book().setId(keys.getInt(1));
+                        bookIds.add(line.book().getId());
+                    }
+                }
+
+                for (ParsedLine line : valid) {
+                    for (int copy = 0; copy < line.book().getTotalCopies(); copy++) {
+                        copyStmt.setInt(1, line.book().getId());
+                        copyStmt.addBatch();
+                    }
+                }
+                copyStmt.executeBatch();
+                ChangeLog.recordAll(conn, bookIds, CatalogEvent.Type.BOOK_ADDED);
+            }
+
+            checkpointStmt.setString(1, source);
+            checkpointStmt.setLong(2, lastLine);
+            checkpointStmt.executeUpdate();
+            conn.commit();
+        }
+
+        if (!valid.isEmpty()) {
+            // One event per chunk, so listeners update their caches once rather than per book
+            CatalogEventBus.publish(CatalogEvent.booksAdded(valid.stream().map(ParsedLine::book).toList()));
+        }
+        return new ChunkResult(valid.size(), rejected);
+    }
+
+    // Validates and normalizes one line; never throws, problems become a Reject
+    private static ParsedLine parse(RawLine raw, int[] columns, char delimiter, Map<String, Integer> categoryIds) {
+        List<String> fields = splitLine(raw.text(), delimiter);
+        int highestColumn = 0;
+        for (int column : columns) {
+            highestColumn = Math.max(highestColumn, column);
+        }
+        if (fields.size() <= highestColumn) {
+            return ParsedLine.rejected(raw, "Expected at least " + (highestColumn + 1) + " fields but found " + fields.size());
+        }
+
+        String title = collapseWhitespace(fields.get(columns[0]));
+        String author = collapseWhitespace(fields.get(columns[1]));
+        String isbn = normalizeIsbn(fields.get(columns[2]));
+        String category = collapseWhitespace(fields.get(columns[3]));
+        String copiesText = fields.get(columns[4]).trim();
+
+        if (title.isEmpty() || author.isEmpty()) {
+            return ParsedLine.rejected(raw, "Title and author are required");
+        }
+        if (isbn == null) {
+            return ParsedLine.rejected(raw, "Invalid ISBN: " + fields.get(columns[2]).trim());
+        }
+        Integer categoryId = categoryIds.get(category.toLowerCase(Locale.ROOT));
+        if (categoryId == null) {
+            return ParsedLine.rejected(raw, "Unknown category: " + category);
+        }
+        int copies;
+        try {
+            copies = Integer.parseInt(copiesText);
+        } catch (NumberFormatException e) {
+            return ParsedLine.rejected(raw, "Invalid number of copies: " + copiesText);
+        }
+        if (copies < 0 || copies > MAX_COPIES_PER_TITLE) {
+            return ParsedLine.rejected(raw, "Number of copies out of range: " + copies);
+        }
+        return new ParsedLine(raw.lineNumber(), new Book(title, author, isbn, categoryId, copies), null);
+    }
+
+    // Splits a delimited line, honouring double-quoted fields with "" as an escaped quote
+    static List<String> splitLine(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int[] mapColumns(List<String> header) throws IOException {
+        int[] columns = new int[REQUIRED_COLUMNS.length];
+        for (int i = 0; i < REQUIRED_COLUMNS.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (header.get(j).trim().equalsIgnoreCase(REQUIRED_COLUMNS[i])) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IOException("Import file header is missing the column: " + REQUIRED_COLUMNS[i]);
+            }
+        }
+        return columns;
+    }
+
+    private static String collapseWhitespace(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    // Strips separators and checks the ISBN-10 or ISBN-13 check digit; returns null if invalid
+    static String normalizeIsbn(String text) {
+        StringBuilder digits = new StringBuilder(13);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                digits.append(c);
+            } else if ((c == 'x' || c == 'X') && digits.length() == 9) {
+                digits.append('X');
+            } else if (c != '-' && c != ' ') {
+                return null;
+            }
+        }
+        String isbn = digits.toString();
+        if (isbn.length() == 10) {
+            int sum = 0;
+            for (int i = 0; i < 10; i++) {
+                int value = isbn.charAt(i) == 'X' ? 10 : isbn.charAt(i) - '0';
+                sum += value * (10 - i);
+            }
+            return sum % 11 == 0 ? isbn : null;
+        }
+        if (isbn.length() == 13 && isbn.indexOf('X') < 0) {
+            int sum = 0;
+            for (int i = 0; i < 13; i++) {
+                sum += (isbn.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+            }
+            return sum % 10 == 0 ? isbn : null;
+        }
+        return null;
+    }
+
+    // Category names and IDs both resolve, so files may use either
+    private static Map<String, Integer> loadCategoryIds() throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        String sql = "SELECT category_id, name FROM category";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt("category_id");
+                ids.put(rs.getString("name").trim().toLowerCase(Locale.ROOT), id);
+                ids.put(String.valueOf(id), id);
+            }
+        }
+        return ids;
+    }
+
+    private static void ensureCheckpointTable() throws SQLException {
+        if (checkpointTableReady) {
+            return;
+        }
+        String sql = "CREATE TABLE IF NOT EXISTS import_checkpoints (" +
+                "source VARCHAR(512) PRIMARY KEY, " +
+                "last_line BIGINT NOT NULL)";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+            checkpointTableReady = true;
+        }
+    }
+
+    private static long readCheckpoint(String source) throws SQLException {
+        String sql = "SELECT last_line FROM import_checkpoints WHERE source = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, source);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong("last_line") : 0;
+            }
+        }
+    }
+
+    private static void clearCheckpoint(String source) throws SQLException {
+        String sql = "DELETE FROM import_checkpoints WHERE source = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, source);
+            stmt.executeUpdate();
+        }
+    }
+
+    private record RawLine(long lineNumber, String text) {
+    }
+
+    private record ParsedLine(long lineNumber, Book book, Reject reject) {
+        private static ParsedLine rejected(RawLine raw, String reason) {
+            return new ParsedLine(raw.lineNumber(), null, new Reject(raw.lineNumber(), raw.text(), reason));
+        }
+    }
+
+    private record ChunkResult(int imported, List<Reject> rejected) {
+    }
 }
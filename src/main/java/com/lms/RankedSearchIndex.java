@@ -0,0 +1,518 @@
+package com.lms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The RankedSearchIndex class is an inverted index over book titles and authors that
+ * ranks matches with BM25F, weighting title matches above author matches. Posting lists
+ * are stored compressed as variable-length integers: the gap to the previous ordinal
+ * followed by the term's frequency in the title and in the author.
+ * <p>
+ * Query terms that are not in the dictionary are expanded to dictionary terms within a
+ * small edit distance, so misspellings still find results. The candidates are found
+ * through an index of the letter pairs in each dictionary term: k edits change at most 2k
+ * of a term's pairs, so only terms sharing enough pairs with the query term are compared
+ * with it. A document matching several expansions of one query term is scored for the
+ * closest one only, so a misspelling never outweighs a correctly spelled word. Only the
+ * best {@code limit} documents are kept, in a bounded heap, instead of sorting every match.
+ * <p>
+ * This class is not thread-safe; {@link Catalog} guards it with its own lock.
+ */
+class RankedSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double TITLE_B = 0.75;
+    private static final double AUTHOR_B = 0.75;
+    private static final double TITLE_WEIGHT = 2.0;
+    private static final double AUTHOR_WEIGHT = 1.0;
+
+    private final Map<String, TermPostings> postings = new HashMap<>();
+    private List<String> dictionary = new ArrayList<>(); // Terms by ID, for fuzzy matching
+    private PairIndex pairIndex = new PairIndex();
+    private final BitSet live = new BitSet();
+    private int[] titleLengths = new int[1024];
+    private int[] authorLengths = new int[1024];
+    private long totalTitleLength;
+    private long totalAuthorLength;
+    private int liveCount;
+    private int deletedCount;
+
+    /**
+     * Indexes a book's title and author under its catalog ordinal. Ordinals must be
+     * added in ascending order.
+     */
+    void add(int ordinal, String title, String author) {
+        List<String> titleTerms = TextAnalyzer.analyze(title);
+        List<String> authorTerms = TextAnalyzer.analyze(author);
+
+        Map<String, int[]> frequencies = new LinkedHashMap<>();
+        for (String term : titleTerms) {
+            frequencies.computeIfAbsent(term, t -> new int[2])[0]++;
+        }
+        for (String term : authorTerms) {
+            frequencies.computeIfAbsent(term, t -> new int[2])[1]++;
+        }
+        for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+            TermPostings list = postings.get(entry.getKey());
+            if (list == null) {
+                list = new TermPostings();
+                postings.put(entry.getKey(), list);
+                pairIndex.add(dictionary.size(), entry.getKey());
+                dictionary.add(entry.getKey());
+            }
+            list.append(ordinal, entry.getValue()[0], entry.getValue()[1]);
+        }
+
+        ensureCapacity(ordinal);
+        titleLengths[ordinal] = titleTerms.size();
+        authorLengths[ordinal] = authorTerms.size();
+        totalTitleLength += titleTerms.size();
+        totalAuthorLength += authorTerms.size();
+        live.set(ordinal);
+        liveCount++;
+    }
+
+    /**
+     * Removes a book from the index. Its postings stay in place but are skipped, and are
+     * dropped by compaction once deleted entries make up a large share of the index.
+     */
+    void remove(int ordinal, String title, String author) {
+        if (!live.get(ordinal)) {
+            return;
+        }
+        List<String> terms = TextAnalyzer.analyze(title);
+        terms.addAll(TextAnalyzer.analyze(author));
+        for (String term : terms.stream().distinct().toList()) {
+            TermPostings list = postings.get(term);
+            if (list != null) {
+                list.docFreq--;
+            }
+        }
+        live.clear(ordinal);
+        totalTitleLength -= titleLengths[ordinal];
+        totalAuthorLength -= authorLengths[ordinal];
+        liveCount--;
+        deletedCount++;
+
+        if (deletedCount > 1000 && deletedCount > liveCount / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * Scores every live document that matches at least one query term and returns the
+     * best ones, highest score first.
+     *
+     * @param query The user's query.
+     * @param limit The maximum number of results.
+     * @return The top results as ordinal and score pairs.
+     */
+    List<ScoredOrdinal> search(String query, int limit) {
+        if (limit <= 0 || liveCount == 0) {
+            return List.of();
+        }
+        double averageTitle = Math.max(1.0, (double) totalTitleLength / liveCount);
+        double averageAuthor = Math.max(1.0, (double) totalAuthorLength / liveCount);
+        ScoreAccumulator scores = new ScoreAccumulator(live.length(), false);
+
+        for (String term : TextAnalyzer.analyze(query).stream().distinct().toList()) {
+            TermPostings exact = postings.get(term);
+            if (exact != null && exact.docFreq > 0) {
+                accumulate(exact, 1.0, averageTitle, averageAuthor, scores);
+                continue;
+            }
+            // Unknown term: assume a typo and use nearby dictionary terms at a discount
+            int maxEdits = maxEditsFor(term);
+            if (maxEdits == 0) {
+                continue;
+            }
+            List<TermPostings> expansions = new ArrayList<>();
+            List<Integer> distances = new ArrayList<>();
+            TermIds candidates = pairIndex.candidates(term, maxEdits, dictionary.size());
+            for (int i = 0; i < candidates.size; i++) {
+                String candidate = dictionary.get(candidates.ids[i]);
+                if (Math.abs(candidate.length() - term.length()) > maxEdits) {
+                    continue;
+                }
+                TermPostings list = postings.get(candidate);
+                int distance = TextAnalyzer.boundedEditDistance(term, candidate, maxEdits);
+                if (distance <= maxEdits && list.docFreq > 0) {
+                    expansions.add(list);
+                    distances.add(distance);
+                }
+            }
+            if (expansions.size() == 1) {
+                accumulate(expansions.get(0), 1.0 / (1 + distances.get(0)), averageTitle, averageAuthor, scores);
+                continue; // A single expansion cannot count twice, so it needs no separate pass
+            }
+            ScoreAccumulator closest = new ScoreAccumulator(live.length(), true);
+            for (int i = 0; i < expansions.size(); i++) {
+                accumulate(expansions.get(i), 1.0 / (1 + distances.get(i)), averageTitle, averageAuthor, closest);
+            }
+            closest.addTo(scores);
+        }
+        return scores.top(limit);
+    }
+
+    int termCount() {
+        return postings.size();
+    }
+
+    private void accumulate(TermPostings list, double boost, double averageTitle, double averageAuthor,
+                            ScoreAccumulator scores) {
+        double idf = Math.log(1 + (liveCount - list.docFreq + 0.5) / (list.docFreq + 0.5));
+        PostingReader reader = new PostingReader(list);
+        while (reader.next()) {
+            int ordinal = reader.ordinal;
+            if (!live.get(ordinal)) {
+                continue;
+            }
+            double weightedTf =
+                    TITLE_WEIGHT * reader.titleTf / (1 - TITLE_B + TITLE_B * titleLengths[ordinal] / averageTitle)
+                    + AUTHOR_WEIGHT * reader.authorTf / (1 - AUTHOR_B + AUTHOR_B * authorLengths[ordinal] / averageAuthor);
+            scores.add(ordinal, (float) (boost * idf * weightedTf / (K1 + weightedTf)));
+        }
+    }
+
+    // Short words have too many neighbours to correct safely
+    private static int maxEditsFor(String term) {
+        if (term.length() <= 3) {
+            return 0;
+        }
+        return term.length() <= 7 ? 1 : 2;
+    }
+
+    // Re-encodes every posting list without the entries of deleted documents
+    private void compact() {
+        List<String> kept = new ArrayList<>();
+        PairIndex keptPairs = new PairIndex();
+        for (String term : dictionary) {
+            if (postings.get(term).docFreq > 0) {
+                keptPairs.add(kept.size(), term);
+                kept.add(term);
+            }
+        }
+        dictionary = kept;
+        pairIndex = keptPairs;
+        postings.values().removeIf(list -> list.docFreq <= 0);
+        for (TermPostings list : postings.values()) {
+            TermPostings compacted = new TermPostings();
+            PostingReader reader = new PostingReader(list);
+            while (reader.next()) {
+                if (live.get(reader.ordinal)) {
+                    compacted.append(reader.ordinal, reader.titleTf, reader.authorTf);
+                }
+            }
+            list.data = compacted.data;
+            list.size = compacted.size;
+            list.lastOrdinal = compacted.lastOrdinal;
+        }
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= titleLengths.length) {
+            int capacity = Math.max(ordinal + 1, titleLengths.length * 2);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+            authorLengths = Arrays.copyOf(authorLengths, capacity);
+        }
+    }
+
+    /**
+     * A document ordinal together with its relevance score.
+     */
+    record ScoredOrdinal(int ordinal, double score) {
+    }
+
+    /**
+     * The IDs of the dictionary terms containing each pair of adjacent letters. A term is
+     * read with a marker before and after it, so its first and last letters form pairs too.
+     * Each distinct pair of a term lists it once, and IDs are added in ascending order.
+     */
+    private static final class PairIndex {
+        private static final char MARKER = '\0';
+
+        private final Map<Integer, TermIds> termsByPair = new HashMap<>();
+
+        private void add(int termId, String term) {
+            for (int pair : distinctPairs(term)) {
+                termsByPair.computeIfAbsent(pair, p -> new TermIds()).add(termId);
+            }
+        }
+
+        /**
+         * Returns the IDs of the terms that share enough pairs with a term to be within the
+         * given number of edits of it. Each edit removes at most two of the term's distinct
+         * pairs, so a term within k edits shares all but at most 2k of them. The result is
+         * a superset of the true matches and must be verified.
+         */
+        private TermIds candidates(String term, int maxEdits, int termCount) {
+            int[] pairs = distinctPairs(term);
+            int needed = pairs.length - 2 * maxEdits;
+            TermIds found = new TermIds();
+            if (needed <= 0) {
+                // Too few distinct pairs to rule anything out, as in a run of one letter
+                for (int id = 0; id < termCount; id++) {
+                    found.add(id);
+                }
+                return found;
+            }
+            // Allocated per query, since searches run concurrently under the catalog's read lock
+            short[] shared = new short[termCount];
+            for (int pair : pairs) {
+                TermIds ids = termsByPair.get(pair);
+                if (ids == null) {
+                    continue;
+                }
+                for (int i = 0; i < ids.size; i++) {
+                    if (++shared[ids.ids[i]] == needed) {
+                        found.add(ids.ids[i]);
+                    }
+                }
+            }
+            return found;
+        }
+
+        private static int[] distinctPairs(String term) {
+            int[] pairs = new int[term.length() + 1];
+            char previous = MARKER;
+            for (int i = 0; i <= term.length(); i++) {
+                char next = i < term.length() ? term.charAt(i) : MARKER;
+                pairs[i] = previous << 16 | next;
+                previous = next;
+            }
+            Arrays.sort(pairs);
+            int distinct = 0;
+            for (int i = 0; i < pairs.length; i++) {
+                if (i == 0 || pairs[i] != pairs[i - 1]) {
+                    pairs[distinct++] = pairs[i];
+                }
+            }
+            return Arrays.copyOf(pairs, distinct);
+        }
+    }
+
+    /**
+     * A growable list of term IDs.
+     */
+    private static final class TermIds {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * A posting list encoded as variable-length integers.
+     */
+    private static final class TermPostings {
+        private byte[] data = new byte[8];
+        private int size;
+        private int lastOrdinal = -1;
+        private int docFreq;
+
+        private void append(int ordinal, int titleTf, int authorTf) {
+            writeVarInt(ordinal - lastOrdinal);
+            writeVarInt(titleTf);
+            writeVarInt(authorTf);
+            lastOrdinal = ordinal;
+            docFreq++;
+        }
+
+        private void writeVarInt(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + 5, data.length * 2));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    /**
+     * Decodes a posting list one entry at a time.
+     */
+    private static final class PostingReader {
+        private final byte[] data;
+        private final int size;
+        private int position;
+        private int ordinal = -1;
+        private int titleTf;
+        private int authorTf;
+
+        private PostingReader(TermPostings list) {
+            this.data = list.data;
+            this.size = list.size;
+        }
+
+        private boolean next() {
+            if (position >= size) {
+                return false;
+            }
+            ordinal += readVarInt();
+            titleTf = readVarInt();
+            authorTf = readVarInt();
+            return true;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Sums scores per ordinal, or keeps the highest one. Selective queries use an
+     * open-addressing hash table, so only matching documents cost memory; once a query
+     * matches a large share of the catalog the scores move to a dense array indexed by
+     * ordinal, which is cheaper than hashing.
+     */
+    private static final class ScoreAccumulator {
+        private final int ordinalBound;
+        private final boolean keepHighest;
+        private int[] keys = new int[64];   // ordinal + 1, 0 marks an empty slot
+        private float[] values = new float[64];
+        private float[] dense;
+        private int count;
+
+        private ScoreAccumulator(int ordinalBound, boolean keepHighest) {
+            this.ordinalBound = ordinalBound;
+            this.keepHighest = keepHighest;
+        }
+
+        private void add(int ordinal, float score) {
+            if (dense != null) {
+                dense[ordinal] = combine(dense[ordinal], score);
+                return;
+            }
+            if (count * 2 >= keys.length) {
+                grow();
+                if (dense != null) {
+                    dense[ordinal] = combine(dense[ordinal], score);
+                    return;
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = mix(ordinal) & mask;
+            while (keys[slot] != 0 && keys[slot] != ordinal + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = ordinal + 1;
+                count++;
+            }
+            values[slot] = combine(values[slot], score);
+        }
+
+        // An empty entry holds 0, and every score is positive
+        private float combine(float current, float score) {
+            return keepHighest ? Math.max(current, score) : current + score;
+        }
+
+        // Adds every score held here to another accumulator
+        private void addTo(ScoreAccumulator target) {
+            if (dense != null) {
+                for (int ordinal = 0; ordinal < dense.length; ordinal++) {
+                    if (dense[ordinal] > 0) {
+                        target.add(ordinal, dense[ordinal]);
+                    }
+                }
+            } else {
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (keys[slot] != 0) {
+                        target.add(keys[slot] - 1, values[slot]);
+                    }
+                }
+            }
+        }
+
+        private List<ScoredOrdinal> top(int limit) {
+            // Min-heap of the best results so far; ties keep the lower ordinal
+            PriorityQueue<ScoredOrdinal> heap = new PriorityQueue<>(limit + 1, (a, b) -> {
+                int byScore = Double.compare(a.score(), b.score());
+                return byScore != 0 ? byScore : Integer.compare(b.ordinal(), a.ordinal());
+            });
+            if (dense != null) {
+                for (int ordinal = 0; ordinal < dense.length; ordinal++) {
+                    if (dense[ordinal] > 0) { // Every contribution is positive
+                        offer(heap, limit, ordinal, dense[ordinal]);
+                    }
+                }
+            } else {
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (keys[slot] != 0) {
+                        offer(heap, limit, keys[slot] - 1, values[slot]);
+                    }
+                }
+            }
+            ScoredOrdinal[] ranked = new ScoredOrdinal[heap.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = heap.poll();
+            }
+            return Arrays.asList(ranked);
+        }
+
+        private static void offer(PriorityQueue<ScoredOrdinal> heap, int limit, int ordinal, float score) {
+            if (heap.size() < limit) {
+                heap.add(new ScoredOrdinal(ordinal, score));
+                return;
+            }
+            ScoredOrdinal weakest = heap.peek();
+            // Only allocate for documents that actually enter the top results
+            if (score > weakest.score() || (score == weakest.score() && ordinal < weakest.ordinal())) {
+                heap.poll();
+                heap.add(new ScoredOrdinal(ordinal, score));
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldValues = values;
+            if (oldKeys.length > ordinalBound / 4) {
+                dense = new float[ordinalBound];
+                for (int slot = 0; slot < oldKeys.length; slot++) {
+                    if (oldKeys[slot] != 0) {
+                        dense[oldKeys[slot] - 1] = oldValues[slot];
+                    }
+                }
+                keys = null;
+                values = null;
+                return;
+            }
+            keys = new int[oldKeys.length * 2];
+            values = new float[oldKeys.length * 2];
+            count = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    add(oldKeys[slot] - 1, oldValues[slot]);
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.lms;
+
+/**
+ * A book returned by a ranked search, together with its relevance score.
+ * Higher scores are better matches; scores are only comparable within one search.
+ *
+ * @param book  The matching book.
+ * @param score The relevance score of the book for the query.
+ */
+public record SearchHit(Book book, double score) {
+}
@@ -1,8 +1,5 @@
 package com.lms;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,71 +8,62 @@ import java.util.Scanner;
 /**
  * The SearchService class provides methods to search for books
  * by title, author, and category in the library database.
+ * Title and author searches are answered from the in-memory {@link Catalog}.
  */
 public class SearchService {
 
     /**
-     * Searches for books by title.
+     * Searches for books by title using the in-memory catalog's trigram index.
      *
      * @param title The title of the book to search for.
      * @return A list of Book objects that match the given title.
      */
     public List<Book> searchByTitle(String title) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author, isbn, category_id FROM books WHERE title LIKE ?";
-        DatabaseConnection dbConnection = new DatabaseConnection();
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            // Set the parameter for the prepared statement
-            stmt.setString(1, "%" + title + "%");
-            ResultSet rs = stmt.executeQuery();
-
-            // Process the result set
-            while (rs.next()) {
-                Book book = new Book(rs.getString("title"), rs.getString("author"), rs.getString("isbn"), rs.getInt("category_id"), rs.getInt("total_copies"));
-                book.setId(rs.getInt("book_id"));
-                books.add(book);
-            }
-
-        } catch (SQLException e) {
-            System.out.println("Error searching books by title: " + e.getMessage());
-        }
+        return Catalog.getShared().searchByTitle(title);
+    }
 
-        return books;
+    /**
+     * Searches for the first books by title, stopping once enough are found.
+     *
+     * @param title The title of the book to search for.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit Book objects that match the given title.
+     */
+    public List<Book> searchByTitle(String title, int limit) {
+        return Catalog.getShared().searchByTitle(title, limit);
     }
 
     /**
-     * Searches for books by author.
+     * Searches for books by author using the in-memory catalog's trigram index.
      *
      * @param author The author of the book to search for.
      * @return A list of Book objects that match the given author.
      */
     public List<Book> searchByAuthor(String author) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author, isbn, category_id FROM books WHERE author LIKE ?";
-        DatabaseConnection dbConnection = new DatabaseConnection();
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            // Set the parameter for the prepared statement
-            stmt.setString(1, "%" + author + "%");
-            ResultSet rs = stmt.executeQuery();
-
-            // Process the result set
-            while (rs.next()) {
-                Book book = new Book(rs.getString("title"), rs.getString("author"), rs.getString("isbn"), rs.getInt("category_id"),rs.getInt("total_copies"));
-                book.setId(rs.getInt("book_id"));
-                books.add(book);
-            }
+        return Catalog.getShared().searchByAuthor(author);
+    }
 
-        } catch (SQLException e) {
-            System.out.println("Error searching books by author: " + e.getMessage());
-        }
+    /**
+     * Searches for the first books by author, stopping once enough are found.
+     *
+     * @param author The author of the book to search for.
+     * @param limit  The maximum number of books to return.
+     * @return Up to limit Book objects that match the given author.
+     */
+    public List<Book> searchByAuthor(String author, int limit) {
+        return Catalog.getShared().searchByAuthor(author, limit);
+    }
 
-        return books;
+    /**
+     * Searches titles and authors for the books most relevant to a free-text query.
+     * Results are ranked with BM25, and misspelled words still match similar words.
+     *
+     * @param query The words to search for.
+     * @param limit The maximum number of results to return.
+     * @return The best matching books with their scores, best match first.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        return Catalog.getShared().search(query, limit);
     }
 
     /**
@@ -85,29 +73,12 @@ public class SearchService {
      * @return A list of Book objects that match the given category ID.
      */
     public List<Book> searchByCategory(int categoryId) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author, isbn, category_id FROM books WHERE category_id = ?";
-        DatabaseConnection dbConnection = new DatabaseConnection();
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            // Set the parameter for the prepared statement
-            stmt.setInt(1, categoryId);
-            ResultSet rs = stmt.executeQuery();
-
-            // Process the result set
-            while (rs.next()) {
-                Book book = new Book(rs.getString("title"), rs.getString("author"), rs.getString("isbn"), rs.getInt("category_id"),rs.getInt("total_copies"));
-                book.setId(rs.getInt("book_id"));
-                books.add(book);
-            }
-
+        try {
+            return BookRepository.getShared().findByCategory(categoryId);
         } catch (SQLException e) {
             System.out.println("Error searching books by category: " + e.getMessage());
         }
-
-        return books;
+        return new ArrayList<>();
     }
 
     /**
@@ -120,11 +91,12 @@ public class SearchService {
         String categoryName = scanner.nextLine();
 
         // Get the category ID based on the category name
-        DatabaseConnection dbConnection = new DatabaseConnection();
-        int categoryId = dbConnection.getCategoryId(categoryName);
+        CategoryRegistry categories = CategoryRegistry.getShared();
+        int categoryId = categories.idOf(categoryName);
 
         if (categoryId == -1) {
             System.out.println("Invalid category. Please try again.");
+            System.out.println("Categories: " + String.join(", ", categories.getNames()));
             return;
         }
 
@@ -1,4 +1,240 @@
 package com.lms;
 
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The SortService class sorts books the way a reader expects in the given locale, by one
+ * or more fields. Each field is turned into a binary collation key once per book and
+ * cached, so a comparison is a byte array comparison and sorting again by another column
+ * computes only the keys it has not seen. A key is recomputed when the value it was made
+ * from changes.
+ * <p>
+ * Sorts are stable: books that compare equal on every field keep their order. Large lists
+ * compute their keys and sort in parallel. {@link #topK} returns only the first books of
+ * the order, keeping a bounded heap instead of sorting the whole list.
+ * <p>
+ * This class is thread-safe. Keys of books that are gone should be released with
+ * {@link #forget(Book)} or {@link #clear()}.
+ */
 public class SortService {
+
+    private static final int PARALLEL_THRESHOLD = 10_000;
+    private static final byte[] EMPTY_KEY = new byte[0];
+
+    /**
+     * A field books can be sorted by.
+     */
+    public enum Field { TITLE, AUTHOR, ISBN, CATEGORY }
+
+    /**
+     * One level of a sort order.
+     *
+     * @param field     The field to compare.
+     * @param ascending Whether smaller values come first.
+     */
+    public record SortKey(Field field, boolean ascending) {
+
+        public static SortKey ascending(Field field) {
+            return new SortKey(field, true);
+        }
+
+        public static SortKey descending(Field field) {
+            return new SortKey(field, false);
+        }
+    }
+
+    // The value a key was made from, so a stale key is noticed
+    private record CachedKey(String source, byte[] key) {
+    }
+
+    // A book with the keys of one sort order and its position in the input
+    private record Row(Book book, byte[][] keys, int position) {
+    }
+
+    private final ThreadLocal<Collator> collators;
+    private final Map<Field, Map<Book, CachedKey>> keys = new EnumMap<>(Field.class);
+
+    /**
+     * Creates a sort service for the default locale.
+     */
+    public SortService() {
+        this(Locale.getDefault());
+    }
+
+    /**
+     * Creates a sort service for a locale. Case is ignored; accents are not.
+     *
+     * @param locale The locale whose collation rules apply.
+     */
+    public SortService(Locale locale) {
+        Collator prototype = Collator.getInstance(locale);
+        prototype.setStrength(Collator.SECONDARY);
+        prototype.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        // A collator is not safe for concurrent use, so every thread gets its own
+        this.collators = ThreadLocal.withInitial(() -> (Collator) prototype.clone());
+        for (Field field : Field.values()) {
+            keys.put(field, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Sorts books by the given order.
+     *
+     * @param books The books to sort; the list is not modified.
+     * @param order The fields to compare, most significant first.
+     * @return A new list holding the books in order.
+     */
+    public List<Book> sort(List<Book> books, List<SortKey> order) {
+        Row[] rows = rowsOf(books, order);
+        Comparator<Row> comparator = rowComparator(order);
+        if (rows.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(rows, comparator);
+        } else {
+            Arrays.sort(rows, comparator);
+        }
+        return booksOf(Arrays.asList(rows));
+    }
+
+    /**
+     * Returns the first books of the given order without sorting the others, for example
+     * the first page of a table.
+     *
+     * @param books The books to choose from; the list is not modified.
+     * @param order The fields to compare, most significant first.
+     * @param k     The number of books to return.
+     * @return At most {@code k} books, in order.
+     */
+    public List<Book> topK(List<Book> books, List<SortKey> order, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        if (k >= books.size()) {
+            return sort(books, order);
+        }
+        Row[] rows = rowsOf(books, order);
+        Comparator<Row> comparator = rowComparator(order);
+        // The heap's head is the last of the best k found so far
+        PriorityQueue<Row> heap = new PriorityQueue<>(k, comparator.reversed());
+        for (Row row : rows) {
+            if (heap.size() < k) {
+                heap.add(row);
+            } else if (comparator.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+        List<Row> best = new ArrayList<>(heap);
+        best.sort(comparator);
+        return booksOf(best);
+    }
+
+    /**
+     * Returns a comparator for the given order, for placing single books into a list that
+     * is already sorted. Unlike {@link #sort}, equal books are not ordered by position.
+     *
+     * @param order The fields to compare, most significant first.
+     * @return The comparator.
+     */
+    public Comparator<Book> comparator(List<SortKey> order) {
+        List<SortKey> levels = List.copyOf(order);
+        return (a, b) -> {
+            for (SortKey level : levels) {
+                int result = Arrays.compareUnsigned(keyOf(a, level.field()), keyOf(b, level.field()));
+                if (result != 0) {
+                    return level.ascending() ? result : -result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Releases the cached keys of a book.
+     *
+     * @param book The book.
+     */
+    public void forget(Book book) {
+        for (Map<Book, CachedKey> cached : keys.values()) {
+            cached.remove(book);
+        }
+    }
+
+    /**
+     * Releases all cached keys.
+     */
+    public void clear() {
+        for (Map<Book, CachedKey> cached : keys.values()) {
+            cached.clear();
+        }
+    }
+
+    private Row[] rowsOf(List<Book> books, List<SortKey> order) {
+        Book[] input = books.toArray(new Book[0]);
+        Row[] rows = new Row[input.length];
+        IntStream positions = IntStream.range(0, input.length);
+        if (input.length >= PARALLEL_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        positions.forEach(i -> {
+            byte[][] rowKeys = new byte[order.size()][];
+            for (int level = 0; level < rowKeys.length; level++) {
+                rowKeys[level] = keyOf(input[i], order.get(level).field());
+            }
+            rows[i] = new Row(input[i], rowKeys, i);
+        });
+        return rows;
+    }
+
+    private static Comparator<Row> rowComparator(List<SortKey> order) {
+        boolean[] ascending = new boolean[order.size()];
+        for (int level = 0; level < ascending.length; level++) {
+            ascending[level] = order.get(level).ascending();
+        }
+        return (a, b) -> {
+            for (int level = 0; level < ascending.length; level++) {
+                int result = Arrays.compareUnsigned(a.keys()[level], b.keys()[level]);
+                if (result != 0) {
+                    return ascending[level] ? result : -result;
+                }
+            }
+            return Integer.compare(a.position(), b.position());
+        };
+    }
+
+    private static List<Book> booksOf(List<Row> rows) {
+        List<Book> books = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            books.add(row.book());
+        }
+        return books;
+    }
+
+    private byte[] keyOf(Book book, Field field) {
+        String source = switch (field) {
+            case TITLE -> book.getTitle();
+            case AUTHOR -> book.getAuthor();
+            case ISBN -> book.getIsbn();
+            case CATEGORY -> CategoryRegistry.getShared().nameOf(book.getCategoryId());
+        };
+        if (source == null) {
+            return EMPTY_KEY; // Missing values sort first
+        }
+        Map<Book, CachedKey> cached = keys.get(field);
+        CachedKey key = cached.get(book);
+        if (key == null || !key.source().equals(source)) {
+            key = new CachedKey(source, collators.get().getCollationKey(source).toByteArray());
+            cached.put(book, key);
+        }
+        return key.key();
+    }
 }
@@ -0,0 +1,124 @@
+package com.lms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The TextAnalyzer class turns titles, authors and queries into the terms used by the
+ * ranked search index: it splits on anything that is not a letter or digit, lower-cases
+ * the pieces and reduces common English suffixes with a light stemmer, so that
+ * "Running Dogs" and "run dog" produce the same terms.
+ */
+final class TextAnalyzer {
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * Splits text into normalized, stemmed terms.
+     *
+     * @param text The text to analyze, may be null.
+     * @return The terms in the order they occur, including repeats.
+     */
+    static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (!token.isEmpty()) {
+                terms.add(stem(token.toString()));
+                token.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Strips common English inflections: plurals, -ing, -ed and -ly.
+     *
+     * @param word A lower-case word.
+     * @return The stemmed word.
+     */
+    static String stem(String word) {
+        int length = word.length();
+        if (length <= 3) {
+            return word;
+        }
+        if (word.endsWith("sses")) {
+            return word.substring(0, length - 2);
+        }
+        if (word.endsWith("ies") && length > 4) {
+            return word.substring(0, length - 3) + "y";
+        }
+        if (word.endsWith("ing") && length > 5) {
+            return undouble(word.substring(0, length - 3));
+        }
+        if (word.endsWith("ed") && length > 4) {
+            return undouble(word.substring(0, length - 2));
+        }
+        if (word.endsWith("ly") && length > 4) {
+            return word.substring(0, length - 2);
+        }
+        if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")) {
+            return word.substring(0, length - 1);
+        }
+        return word;
+    }
+
+    // "runn" -> "run", "stopp" -> "stop", but keeps "fall" and "miss"
+    private static String undouble(String stem) {
+        int length = stem.length();
+        if (length >= 3 && stem.charAt(length - 1) == stem.charAt(length - 2)) {
+            char last = stem.charAt(length - 1);
+            if (last != 'l' && last != 's' && last != 'z' && !isVowel(last)) {
+                return stem.substring(0, length - 1);
+            }
+        }
+        return stem;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    /**
+     * Computes the Levenshtein distance between two terms, giving up as soon as it
+     * is certain to exceed the given bound.
+     *
+     * @param a        The first term.
+     * @param b        The second term.
+     * @param maxEdits The largest distance of interest.
+     * @return The edit distance, or maxEdits + 1 if it is larger than maxEdits.
+     */
+    static int boundedEditDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxEdits) {
+                return maxEdits + 1; // Every later row can only be as large or larger
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+}
@@ -0,0 +1,124 @@
+package com.lms;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The TrigramIndex class maps every three-character sequence of a normalized text field
+ * to a sorted posting list of the catalog ordinals whose field contains it.
+ * A substring query intersects the posting lists of the query's trigrams, starting with the
+ * rarest one, which yields a small candidate set that only needs to be verified.
+ * <p>
+ * Removed values are not taken out of the posting lists one by one, since that would shift
+ * long lists on every delete. The caller's verification rejects them, and {@link Catalog}
+ * builds a new index once enough have accumulated.
+ * <p>
+ * This class is not thread-safe; {@link Catalog} guards it with its own lock.
+ */
+class TrigramIndex {
+
+    private static final int[] NO_ORDINALS = new int[0];
+
+    private final Map<Long, PostingList> postings = new HashMap<>();
+
+    /**
+     * Indexes a normalized value under the given ordinal. Ordinals must be added in
+     * ascending order, which keeps every posting list sorted without extra work.
+     */
+    void add(int ordinal, String normalized) {
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            postings.computeIfAbsent(trigramKey(normalized, i), k -> new PostingList()).addLast(ordinal);
+        }
+    }
+
+    /**
+     * Returns the ordinals whose value contains every trigram of the normalized term, in
+     * ascending order. The result is a superset of the true matches and must be verified.
+     * Terms shorter than three characters have no trigrams and return null.
+     */
+    int[] candidates(String normalizedTerm) {
+        int count = normalizedTerm.length() - 2;
+        if (count <= 0) {
+            return null;
+        }
+        PostingList[] lists = new PostingList[count];
+        for (int i = 0; i < count; i++) {
+            PostingList list = postings.get(trigramKey(normalizedTerm, i));
+            if (list == null) {
+                return NO_ORDINALS; // A trigram nobody contains means no match at all
+            }
+            lists[i] = list;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists[0].ordinals, lists[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.length && resultSize > 0; i++) {
+            if (lists[i] == lists[i - 1]) {
+                continue; // Repeated trigrams in the term
+            }
+            resultSize = intersect(result, resultSize, lists[i]);
+        }
+        return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+    }
+
+    int trigramCount() {
+        return postings.size();
+    }
+
+    // Keeps the values of candidates[0..size) that also occur in the list, in place
+    private static int intersect(int[] candidates, int size, PostingList list) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < size && from < list.size; i++) {
+            int position = gallop(list.ordinals, from, list.size, candidates[i]);
+            if (position < list.size && list.ordinals[position] == candidates[i]) {
+                candidates[kept++] = candidates[i];
+                from = position + 1;
+            } else {
+                from = position;
+            }
+        }
+        return kept;
+    }
+
+    // Finds the first position >= from whose value is >= target, probing exponentially
+    private static int gallop(int[] values, int from, int to, int target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && values[high] < target) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high + 1, to); // values[high] itself may be the target
+        int position = Arrays.binarySearch(values, low, high, target);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private static long trigramKey(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+                | ((long) text.charAt(offset + 1) << 16)
+                | text.charAt(offset + 2);
+    }
+
+    /**
+     * A growable, sorted array of ordinals.
+     */
+    private static final class PostingList {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void addLast(int ordinal) {
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return; // The same trigram appears twice in one value
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
@@ -4,14 +4,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 public class User {
     private static final DatabaseConnection dbConnection = new DatabaseConnection(); // Single instance of DatabaseConnection
     private final String username;
     private final String password; // Store the raw password temporarily
     private String role; // Store the user's role (e.g., "admin" or "user")
+    private String sessionToken; // Set by a successful login
 
     // Constructor for new user registration
     public User(String username, String password) {
@@ -33,9 +32,9 @@ public class User {
                 return false; // Username already exists
             }
 
-            String hashedPassword = hashPassword(password);
+            String hashedPassword = UserManager.hashPassword(password);
             return saveUserToDatabase(username, hashedPassword, role);
-        } catch (SQLException | NoSuchAlgorithmException e) {
+        } catch (SQLException e) {
             e.printStackTrace();
             return false; // Registration failed
         }
@@ -71,54 +70,22 @@ public class User {
         }
     }
 
-    // Method to hash the password
-    private String hashPassword(String password) throws NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(password.getBytes());
-        byte[] byteData = md.digest();
-
-        StringBuilder sb = new StringBuilder();
-        for (byte b : byteData) {
-            sb.append(String.format("%02x", b));
+    // Method to log in; the session and role come from UserManager, which caches credentials
+    public boolean login(String inputUsername, String inputPassword) {
+        UserManager.Session session = UserManager.getShared().login(inputUsername, inputPassword);
+        if (session == null) {
+            return false;
         }
-        return sb.toString();
+        UserManager.getShared().revoke(sessionToken); // Logging in again replaces the old session
+        this.role = session.role();
+        this.sessionToken = session.token();
+        return true;
     }
 
-    public boolean login(String inputUsername, String inputPassword) {
-        try {
-            String hashedInputPassword = hashPassword(inputPassword);
-            String query = "SELECT password, role FROM users WHERE username = ?";
-
-            System.out.println("Executing login query for username: " + inputUsername); // Debug
-
-            try (Connection conn = dbConnection.getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement(query)) {
-                pstmt.setString(1, inputUsername);
-                ResultSet rs = pstmt.executeQuery();
-
-                if (rs.next()) {
-                    String storedPassword = rs.getString("password");
-                    String storedRole = rs.getString("role");
-
-                    System.out.println("Found user in database"); // Debug
-                    System.out.println("Stored role: " + storedRole); // Debug
-
-                    if (storedPassword.equals(hashedInputPassword)) {
-                        this.role = storedRole;
-                        System.out.println("Password match successful"); // Debug
-                        return true;
-                    } else {
-                        System.out.println("Password match failed"); // Debug
-                    }
-                } else {
-                    System.out.println("No user found with username: " + inputUsername); // Debug
-                }
-            }
-        } catch (SQLException | NoSuchAlgorithmException e) {
-            System.out.println("Exception during login: " + e.getMessage()); // Debug
-            e.printStackTrace();
-        }
-        return false;
+    // Method to log out, ending the session
+    public void logout() {
+        UserManager.getShared().revoke(sessionToken);
+        sessionToken = null;
     }
 
     // Method to get the user's role
@@ -126,6 +93,11 @@ public class User {
         return role; // Return the role (e.g., "admin" or "user")
     }
 
+    // Method to get the session token, or null if not logged in
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
     // Method to get the username
     public String getUsername() {
         return username; // Return the username
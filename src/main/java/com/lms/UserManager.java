@@ -1,4 +1,513 @@
 package com.lms;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The UserManager class signs users in and keeps track of their sessions. A successful
+ * login issues an opaque, random session token; the session remembers the user's role, so
+ * checking a token or a permission afterwards is a lookup in memory rather than a query.
+ * Sessions end when they expire, when they are revoked, or when the user logs out.
+ * <p>
+ * Stored password hashes are kept for a short while after they are read, already decoded
+ * into bytes, so repeated logins by the same user skip the database as well. Passwords are
+ * compared as digests in constant time, without formatting either side as text. A password
+ * given for an unknown username is hashed and compared all the same, so the time a failed
+ * login takes does not tell whether the username exists.
+ * <p>
+ * Whole rosters of new users can be provisioned at once from a CSV or TSV file; see
+ * {@link #provisionUsers(Path, ProvisionListener)}.
+ */
 public class UserManager {
+
+    /**
+     * How long a session stays valid after login.
+     */
+    public static final Duration SESSION_TTL = Duration.ofHours(8);
+
+    // Long enough to absorb repeated logins, short enough that a change made elsewhere soon applies
+    private static final long CREDENTIAL_TTL_MS = 60_000;
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+    private static final int TOKEN_BYTES = 32;
+
+    private static final int PROVISION_CHUNK = 2_000;
+    // The same limits as the login page enforces on registration
+    private static final int MIN_USERNAME_LENGTH = 3;
+    private static final int MIN_PASSWORD_LENGTH = 6;
+    private static final Set<String> ROLES = Set.of("user", "admin");
+    // Compared against when the username is unknown; no password hashes to it in practice
+    private static final byte[] UNKNOWN_USER_HASH = new byte[32];
+
+    private static volatile UserManager shared;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<>();
+    private volatile long nextSweepMillis;
+
+    /**
+     * A signed-in user.
+     *
+     * @param token     The opaque token identifying the session.
+     * @param username  The user's name.
+     * @param role      The user's role, such as "admin" or "user".
+     * @param expiresAt When the session stops being valid.
+     */
+    public record Session(String token, String username, String role, Instant expiresAt) {
+
+        public boolean hasRole(String requiredRole) {
+            return role.equalsIgnoreCase(requiredRole);
+        }
+
+        boolean isExpired(Instant now) {
+            return !now.isBefore(expiresAt);
+        }
+    }
+
+    // A stored password hash and role as read from the users table
+    private record Credential(byte[] passwordHash, String role, long loadedAtMillis) {
+    }
+
+    /**
+     * Progress of a provisioning run, reported after every written chunk.
+     *
+     * @param linesRead      Data lines read so far.
+     * @param created        Users created so far.
+     * @param rejected       Lines rejected so far.
+     * @param usersPerSecond Lines processed per second.
+     */
+    public record ProvisionProgress(long linesRead, long created, long rejected, double usersPerSecond) {
+    }
+
+    /**
+     * A roster line that did not create a user. The line itself is not kept, as it holds a
+     * password.
+     *
+     * @param lineNumber The line number in the file, starting at 1 for the header.
+     * @param username   The username on the line, or an empty string if there was none.
+     * @param reason     Why the line was rejected.
+     */
+    public record ProvisionReject(long lineNumber, String username, String reason) {
+    }
+
+    /**
+     * Receives progress and rejected lines while a roster is provisioned.
+     */
+    public interface ProvisionListener {
+        void onProgress(ProvisionProgress progress);
+
+        void onReject(ProvisionReject reject);
+    }
+
+    private record RosterText(long lineNumber, String text) {
+    }
+
+    // A roster line after validation and hashing; exactly one of hash and reject is set
+    private record RosterLine(long lineNumber, String username, String passwordHash, String role, ProvisionReject reject) {
+
+        static RosterLine rejected(long lineNumber, String username, String reason) {
+            return new RosterLine(lineNumber, username, null, null, new ProvisionReject(lineNumber, username, reason));
+        }
+    }
+
+    private UserManager() {
+    }
+
+    /**
+     * Returns the user manager shared by the whole application.
+     *
+     * @return The shared user manager.
+     */
+    public static UserManager getShared() {
+        UserManager manager = shared;
+        if (manager == null) {
+            synchronized (UserManager.class) {
+                manager = shared;
+                if (manager == null) {
+                    manager = new UserManager();
+                    shared = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Checks a username and password and starts a session for the user.
+     *
+     * @param username The username.
+     * @param password The password as typed.
+     * @return The new session, or null if the username or password is wrong or the users
+     *         table cannot be read.
+     */
+    public Session login(String username, String password) {
+        Credential credential = findCredential(username);
+        if (!matches(credential, password)) {
+            return null;
+        }
+        sweepExpired();
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        Session session = new Session(token, username, credential.role(), Instant.now().plus(SESSION_TTL));
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * Checks a username and password without starting a session.
+     *
+     * @param username The username.
+     * @param password The password as typed.
+     * @return True if the password is the user's.
+     */
+    public boolean checkPassword(String username, String password) {
+        return matches(findCredential(username), password);
+    }
+
+    /**
+     * Looks up the session for a token.
+     *
+     * @param token The session token.
+     * @return The session, or null if the token is unknown, expired or revoked.
+     */
+    public Session validate(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.isExpired(Instant.now())) {
+            sessions.remove(token, session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Checks whether a token belongs to a valid session with the given role.
+     *
+     * @param token        The session token.
+     * @param requiredRole The role needed, compared ignoring case.
+     * @return True if the session is valid and has the role.
+     */
+    public boolean isAuthorized(String token, String requiredRole) {
+        Session session = validate(token);
+        return session != null && session.hasRole(requiredRole);
+    }
+
+    /**
+     * Ends one session, as on logout.
+     *
+     * @param token The session token; unknown tokens are ignored.
+     */
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently held, including expired ones not yet swept.
+     *
+     * @return The number of sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Creates users in bulk from a CSV or TSV roster. The file must start with a header
+     * naming the columns {@code username} and {@code password}, and may name a {@code role}
+     * column; users without a role get the role "user".
+     * <p>
+     * The file is streamed in chunks. Each chunk is validated and its passwords hashed in
+     * parallel while the previous chunk is written. Usernames that already exist, in the
+     * database or earlier in the file, are rejected against a set of all usernames read once
+     * at the start, compared ignoring case as MySQL's default collation does. Each chunk is
+     * written in one transaction with a batched insert. If the batch fails, for example
+     * because a user was registered meanwhile, the chunk is written again row by row so
+     * every failing line is reported with its own reason.
+     *
+     * @param roster   The file to read.
+     * @param listener Receives progress and rejects; may be null.
+     * @return The final progress.
+     * @throws IOException  if the file cannot be read or has no usable header.
+     * @throws SQLException if the existing usernames cannot be read.
+     */
+    public ProvisionProgress provisionUsers(Path roster, ProvisionListener listener) throws IOException, SQLException {
+        Set<String> taken = loadUsernames();
+        long startNanos = System.nanoTime();
+        long linesRead = 0;
+        long created = 0;
+        long rejected = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(roster, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Roster file is empty: " + roster);
+            }
+            char delimiter = header.indexOf('\t') >= 0 ? '\t' : ',';
+            List<String> headerFields = InventoryManager.splitLine(header, delimiter);
+            int usernameColumn = findColumn(headerFields, "username", true);
+            int passwordColumn = findColumn(headerFields, "password", true);
+            int roleColumn = findColumn(headerFields, "role", false);
+
+            long lineNumber = 1;
+            CompletableFuture<List<RosterLine>> pending = null;
+            List<RosterText> chunk = new ArrayList<>(PROVISION_CHUNK);
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                    linesRead++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    chunk.add(new RosterText(lineNumber, line));
+                    if (chunk.size() < PROVISION_CHUNK) {
+                        continue;
+                    }
+                }
+
+                // Hash this chunk on all cores while the previous one is being written
+                CompletableFuture<List<RosterLine>> parsing = null;
+                if (!chunk.isEmpty()) {
+                    List<RosterText> toParse = chunk;
+                    parsing = CompletableFuture.supplyAsync(() -> toParse.parallelStream()
+                            .map(raw -> parseRosterLine(raw, delimiter, usernameColumn, passwordColumn, roleColumn))
+                            .toList());
+                    chunk = new ArrayList<>(PROVISION_CHUNK);
+                }
+                if (pending != null) {
+                    List<ProvisionReject> rejects = new ArrayList<>();
+                    created += writeRosterChunk(pending.join(), taken, rejects);
+                    rejected += rejects.size();
+                    if (listener != null) {
+                        rejects.forEach(listener::onReject);
+                        listener.onProgress(provisionProgress(linesRead, created, rejected, startNanos));
+                    }
+                }
+                pending = parsing;
+                if (line == null && pending == null) {
+                    break;
+                }
+            }
+        }
+        ProvisionProgress finished = provisionProgress(linesRead, created, rejected, startNanos);
+        if (listener != null) {
+            listener.onProgress(finished);
+        }
+        return finished;
+    }
+
+    private static ProvisionProgress provisionProgress(long linesRead, long created, long rejected, long startNanos) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        return new ProvisionProgress(linesRead, created, rejected, (created + rejected) / seconds);
+    }
+
+    private static int findColumn(List<String> header, String name, boolean required) throws IOException {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        if (required) {
+            throw new IOException("Roster file header is missing the column: " + name);
+        }
+        return -1;
+    }
+
+    // Validates and hashes one line; never throws, problems become a reject
+    private static RosterLine parseRosterLine(RosterText raw, char delimiter,
+                                              int usernameColumn, int passwordColumn, int roleColumn) {
+        long lineNumber = raw.lineNumber();
+        List<String> fields = InventoryManager.splitLine(raw.text(), delimiter);
+        String username = usernameColumn < fields.size() ? fields.get(usernameColumn).trim() : "";
+        if (passwordColumn >= fields.size()) {
+            return RosterLine.rejected(lineNumber, username, "Too few fields");
+        }
+        String password = fields.get(passwordColumn).trim();
+        String role = roleColumn < 0 || roleColumn >= fields.size() || fields.get(roleColumn).isBlank()
+                ? "user" : fields.get(roleColumn).trim().toLowerCase(Locale.ROOT);
+        if (username.length() < MIN_USERNAME_LENGTH) {
+            return RosterLine.rejected(lineNumber, username, "Username must be at least " + MIN_USERNAME_LENGTH + " characters long");
+        }
+        if (password.length() < MIN_PASSWORD_LENGTH) {
+            return RosterLine.rejected(lineNumber, username, "Password must be at least " + MIN_PASSWORD_LENGTH + " characters long");
+        }
+        if (!ROLES.contains(role)) {
+            return RosterLine.rejected(lineNumber, username, "Unknown role: " + role);
+        }
+        return new RosterLine(lineNumber, username, hashPassword(password), role, null);
+    }
+
+    private static Set<String> loadUsernames() throws SQLException {
+        Set<String> usernames = new HashSet<>();
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(PROVISION_CHUNK);
+            try (ResultSet rs = stmt.executeQuery("SELECT username FROM users")) {
+                while (rs.next()) {
+                    usernames.add(rs.getString(1).toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return usernames;
+    }
+
+    // Screens out taken usernames, then inserts the rest; returns how many users were created
+    private static int writeRosterChunk(List<RosterLine> lines, Set<String> taken, List<ProvisionReject> rejects) {
+        List<RosterLine> valid = new ArrayList<>(lines.size());
+        for (RosterLine line : lines) {
+            if (line.reject() != null) {
+                rejects.add(line.reject());
+            } else if (!taken.add(line.username().toLowerCase(Locale.ROOT))) {
+                rejects.add(new ProvisionReject(line.lineNumber(), line.username(), "Username already exists"));
+            } else {
+                valid.add(line);
+            }
+        }
+        if (valid.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            try {
+                for (RosterLine line : valid) {
+                    bindRosterLine(stmt, line);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                return valid.size();
+            } catch (SQLException e) {
+                // A rewritten batch fails as a whole, so find the failing rows one at a time
+                conn.rollback();
+                stmt.clearBatch();
+                conn.setAutoCommit(true);
+                int created = 0;
+                for (RosterLine line : valid) {
+                    try {
+                        bindRosterLine(stmt, line);
+                        stmt.executeUpdate();
+                        created++;
+                    } catch (SQLException rowError) {
+                        rejects.add(new ProvisionReject(line.lineNumber(), line.username(), rowError.getMessage()));
+                    }
+                }
+                return created;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error provisioning users: " + e.getMessage());
+            for (RosterLine line : valid) {
+                rejects.add(new ProvisionReject(line.lineNumber(), line.username(), e.getMessage()));
+            }
+            return 0;
+        }
+    }
+
+    private static void bindRosterLine(PreparedStatement stmt, RosterLine line) throws SQLException {
+        stmt.setString(1, line.username());
+        stmt.setString(2, line.passwordHash());
+        stmt.setString(3, line.role());
+    }
+
+    /**
+     * Hashes a password the way it is stored in the users table.
+     *
+     * @param password The password as typed.
+     * @return The SHA-256 of its UTF-8 bytes, in lowercase hex.
+     */
+    static String hashPassword(String password) {
+        return HexFormat.of().formatHex(digest(password));
+    }
+
+    private static byte[] digest(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static boolean matches(Credential credential, String password) {
+        byte[] expected = credential != null ? credential.passwordHash() : UNKNOWN_USER_HASH;
+        boolean equal = MessageDigest.isEqual(expected, digest(password));
+        return equal && credential != null;
+    }
+
+    private Credential findCredential(String username) {
+        long now = System.currentTimeMillis();
+        Credential cached = credentials.get(username);
+        if (cached != null && now - cached.loadedAtMillis() < CREDENTIAL_TTL_MS) {
+            return cached;
+        }
+
+        String sql = "SELECT password, role FROM users WHERE username = ?";
+        DatabaseConnection dbConnection = new DatabaseConnection();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    credentials.remove(username);
+                    return null; // Unknown users are not cached, so a new registration works at once
+                }
+                Credential credential = new Credential(HexFormat.of().parseHex(rs.getString(1)), rs.getString(2), now);
+                credentials.put(username, credential);
+                return credential;
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            System.out.println("Error reading user credentials: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Expired sessions are otherwise only dropped when their token is presented again
+    private void sweepExpired() {
+        long now = System.currentTimeMillis();
+        if (now < nextSweepMillis) {
+            return;
+        }
+        nextSweepMillis = now + SWEEP_INTERVAL_MS;
+        Instant instant = Instant.ofEpochMilli(now);
+        sessions.values().removeIf(session -> session.isExpired(instant));
+    }
 }